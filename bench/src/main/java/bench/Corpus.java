@@ -0,0 +1,71 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic corpora following the example languages commented out in
+ * {@code learn.Main.sentences}, generated at any size from a fixed seed.
+ */
+public enum Corpus {
+
+    // binary numerals that are multiples of 3, e.g. "1 1 0"
+    MULTIPLES_OF_3 {
+        @Override
+        String sentence(Random random) {
+            return spaced(Long.toBinaryString(3L * (1 + random.nextInt(1 << 20))));
+        }
+    },
+    // binary strings holding a single 1, e.g. "0 0 1 0 0 0"
+    POWERS_OF_2 {
+        @Override
+        String sentence(Random random) {
+            StringBuilder sentence = new StringBuilder();
+            append(sentence, "0", random.nextInt(24));
+            append(sentence, "1", 1);
+            append(sentence, "0", random.nextInt(24));
+            return sentence.toString();
+        }
+    },
+    // a^n b^m with n, m >= 1
+    A_N_B_M {
+        @Override
+        String sentence(Random random) {
+            StringBuilder sentence = new StringBuilder();
+            append(sentence, "a", 1 + random.nextInt(32));
+            append(sentence, "b", 1 + random.nextInt(32));
+            return sentence.toString();
+        }
+    };
+
+    private static final long SEED = 6083;
+
+    abstract String sentence(Random random);
+
+    public List<String> sentences(int count) {
+        Random random = new Random(SEED);
+        List<String> sentences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sentences.add(sentence(random));
+        }
+        return sentences;
+    }
+
+    private static String spaced(String symbols) {
+        StringBuilder sentence = new StringBuilder(2 * symbols.length());
+        for (int i = 0; i < symbols.length(); i++) {
+            append(sentence, symbols.substring(i, i + 1), 1);
+        }
+        return sentence.toString();
+    }
+
+    private static void append(StringBuilder sentence, String symbol, int times) {
+        for (int i = 0; i < times; i++) {
+            if (sentence.length() > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(symbol);
+        }
+    }
+}
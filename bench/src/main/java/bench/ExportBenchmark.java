@@ -0,0 +1,51 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uci.ics.jung.graph.DirectedSparseMultigraph;
+import fsa.FSA;
+import fsa.FSAEdge;
+import fsa.FSANode;
+
+/** Exports the unmerged prefix tree, the largest graph the viewer shows. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ExportBenchmark {
+
+    @Param({"MULTIPLES_OF_3", "POWERS_OF_2", "A_N_B_M"})
+    public Corpus corpus;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private FSA fsa;
+
+    @Setup
+    public void ingest() {
+        fsa = new FSA();
+        for (String sentence : corpus.sentences(size)) {
+            fsa.ingestSentence(sentence);
+        }
+    }
+
+    @Benchmark
+    public DirectedSparseMultigraph<FSANode, FSAEdge> getVisualGraph() {
+        return fsa.getVisualGraph();
+    }
+}
@@ -0,0 +1,87 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fsa.CompiledDFA;
+import fsa.FSA;
+import fsa.SymbolTable;
+
+/**
+ * Transition lookups, one per token of the corpus: walking the prefix tree
+ * with {@link FSA#getNextState(int, int)}, which only reads it, and the
+ * compiled acceptor of the learned automaton.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LookupBenchmark {
+
+    @Param({"MULTIPLES_OF_3", "POWERS_OF_2", "A_N_B_M"})
+    public Corpus corpus;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private int[][] tokens;
+    private FSA prefixTree;
+    private CompiledDFA learned;
+
+    @Setup
+    public void build() {
+        List<String> sentences = corpus.sentences(size);
+        prefixTree = new FSA();
+        for (String sentence : sentences) {
+            prefixTree.ingestSentence(sentence);
+        }
+        SymbolTable symbols = prefixTree.getSymbolTable();
+        tokens = new int[sentences.size()][];
+        for (int i = 0; i < tokens.length; i++) {
+            String[] words = sentences.get(i).split(" ");
+            tokens[i] = new int[words.length];
+            for (int j = 0; j < words.length; j++) {
+                tokens[i][j] = symbols.lookup(words[j]);
+            }
+        }
+        FSA fsa = new FSA();
+        for (String sentence : sentences) {
+            fsa.ingestSentence(sentence);
+        }
+        fsa.learn();
+        learned = fsa.compile();
+    }
+
+    @Benchmark
+    public void prefixTreeNextState(Blackhole blackhole) {
+        for (int[] sentence : tokens) {
+            int state = prefixTree.getStartState();
+            for (int label : sentence) {
+                state = prefixTree.getNextState(state, label);
+            }
+            blackhole.consume(state);
+        }
+    }
+
+    @Benchmark
+    public void compiledNext(Blackhole blackhole) {
+        for (int[] sentence : tokens) {
+            blackhole.consume(learned.accepts(sentence));
+        }
+    }
+}
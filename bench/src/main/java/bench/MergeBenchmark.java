@@ -0,0 +1,91 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsa.FSA;
+import fsa.LearningSummary;
+
+/**
+ * Merges a freshly ingested prefix tree to convergence, either one level at
+ * a time through {@link FSA#merge()} the way the viewer steps it, or in one
+ * go with {@link FSA#learn()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class MergeBenchmark {
+
+    @Param({"MULTIPLES_OF_3", "POWERS_OF_2", "A_N_B_M"})
+    public Corpus corpus;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private List<String> sentences;
+    private FSA fsa;
+
+    @Setup
+    public void generate() {
+        sentences = corpus.sentences(size);
+        // stepping has to end where learning does, or mergeSteps would
+        // measure less work than learn
+        FSA stepped = ingested();
+        while (stepped.merge()) {
+            // keep stepping
+        }
+        FSA learned = ingested();
+        learned.learn();
+        if (stepped.getStateCount() != learned.getStateCount()
+                || stepped.getTransitionCount() != learned.getTransitionCount()) {
+            throw new IllegalStateException("stepping ends with " + stepped.getStateCount() + " states and "
+                    + stepped.getTransitionCount() + " transitions, learning with " + learned.getStateCount()
+                    + " and " + learned.getTransitionCount());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void ingest() {
+        fsa = ingested();
+    }
+
+    private FSA ingested() {
+        FSA fsa = new FSA();
+        for (String sentence : sentences) {
+            fsa.ingestSentence(sentence);
+        }
+        return fsa;
+    }
+
+    // the first call merges the final states; stepping stops once merge()
+    // reports that no conflicts are left
+    @Benchmark
+    public int mergeSteps() {
+        int steps = 1;
+        while (fsa.merge()) {
+            steps++;
+        }
+        return steps;
+    }
+
+    @Benchmark
+    public LearningSummary learn() {
+        return fsa.learn();
+    }
+}
@@ -0,0 +1,267 @@
+package fsa;
+
+import java.math.BigInteger;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * The sentences a {@link CompiledDFA} accepts with at most a given number
+ * of tokens, ordered by length and then token by token, comparing tokens
+ * as Strings. Counting runs backwards over the transitions: the sentences
+ * of exactly m tokens accepted from a state are the sum of those of m - 1
+ * tokens from each of its targets. Enumeration keeps that table, one row
+ * per length, so it can jump straight to the sentence of any rank; it
+ * never builds more than the one sentence it hands out, and splits by
+ * halving its range of ranks.
+ */
+final class AcceptedSentences {
+
+    private final int start;
+    private final IntBuffer offsets;
+    private final IntBuffer labels;
+    private final IntBuffer targets;
+    private final int maxLength;
+    // exact[m][s]: accepted sentences of exactly m tokens from state s;
+    // rows past the longest accepted sentence are null
+    private final BigInteger[][] exact;
+    private final BigInteger total;
+    // each state's transitions, as indexes into labels and targets, in token order
+    private final int[] order;
+
+    AcceptedSentences(CompiledDFA dfa, int maxLength) {
+        checkLength(maxLength);
+        start = dfa.getStartState();
+        offsets = dfa.offsets();
+        labels = dfa.labels();
+        targets = dfa.targets();
+        this.maxLength = maxLength;
+        exact = new BigInteger[maxLength + 1][];
+        exact[0] = acceptingRow(dfa);
+        BigInteger sum = exact[0][start];
+        for (int m = 1; m <= maxLength; m++) {
+            exact[m] = nextRow(exact[m - 1], offsets, targets);
+            sum = sum.add(exact(m, start));
+        }
+        total = sum;
+
+        SymbolTable symbols = dfa.getSymbolTable();
+        Integer[] byToken = new Integer[symbols.size()];
+        for (int l = 0; l < byToken.length; l++) {
+            byToken[l] = l;
+        }
+        Arrays.sort(byToken, Comparator.comparing(symbols::label));
+        int[] rank = new int[byToken.length];
+        for (int r = 0; r < byToken.length; r++) {
+            rank[byToken[r]] = r;
+        }
+        int transitions = labels.limit();
+        long[] keyed = new long[transitions];
+        for (int s = 0; s < offsets.limit() - 1; s++) {
+            for (int i = offsets.get(s); i < offsets.get(s + 1); i++) {
+                keyed[i] = ((long) rank[labels.get(i)] << 32) | i;
+            }
+            Arrays.sort(keyed, offsets.get(s), offsets.get(s + 1));
+        }
+        order = new int[transitions];
+        for (int i = 0; i < transitions; i++) {
+            order[i] = (int) keyed[i];
+        }
+    }
+
+    /** Number of accepted sentences of at most {@code maxLength} tokens, keeping two rows at a time. */
+    static BigInteger count(CompiledDFA dfa, int maxLength) {
+        checkLength(maxLength);
+        IntBuffer offsets = dfa.offsets();
+        IntBuffer targets = dfa.targets();
+        int start = dfa.getStartState();
+        BigInteger[] row = acceptingRow(dfa);
+        BigInteger count = row[start];
+        for (int m = 1; m <= maxLength; m++) {
+            row = nextRow(row, offsets, targets);
+            if (row == null) {
+                // no longer sentences are accepted from anywhere
+                break;
+            }
+            count = count.add(row[start]);
+        }
+        return count;
+    }
+
+    private static void checkLength(int maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("maximum length must not be negative: " + maxLength);
+        }
+    }
+
+    private static BigInteger[] acceptingRow(CompiledDFA dfa) {
+        BigInteger[] row = new BigInteger[dfa.getStateCount()];
+        for (int s = 0; s < row.length; s++) {
+            row[s] = dfa.isAccepting(s) ? BigInteger.ONE : BigInteger.ZERO;
+        }
+        return row;
+    }
+
+    // null when the whole row is zero
+    private static BigInteger[] nextRow(BigInteger[] row, IntBuffer offsets, IntBuffer targets) {
+        if (row == null) {
+            return null;
+        }
+        BigInteger[] next = new BigInteger[row.length];
+        boolean any = false;
+        for (int s = 0; s < row.length; s++) {
+            BigInteger sum = BigInteger.ZERO;
+            for (int i = offsets.get(s); i < offsets.get(s + 1); i++) {
+                BigInteger c = row[targets.get(i)];
+                if (c.signum() != 0) {
+                    sum = sum.add(c);
+                }
+            }
+            next[s] = sum;
+            any |= sum.signum() != 0;
+        }
+        return any ? next : null;
+    }
+
+    BigInteger total() {
+        return total;
+    }
+
+    Spliterator<int[]> spliterator() {
+        return new Cursor(BigInteger.ZERO, total);
+    }
+
+    private BigInteger exact(int m, int state) {
+        BigInteger[] row = exact[m];
+        return row == null ? BigInteger.ZERO : row[state];
+    }
+
+    private final class Cursor implements Spliterator<int[]> {
+        // the ranks [position, end) are left to hand out
+        private BigInteger position;
+        private final BigInteger end;
+        // the sentence at rank position - 1 as the states along its path and
+        // the index into order taken at each step; length -1 until seeked
+        private int length = -1;
+        private int[] states;
+        private int[] choices;
+
+        Cursor(BigInteger position, BigInteger end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            if (position.compareTo(end) >= 0) {
+                return false;
+            }
+            if (length < 0) {
+                seek(position);
+            } else {
+                step();
+            }
+            int[] tokens = new int[length];
+            for (int d = 0; d < length; d++) {
+                tokens[d] = labels.get(order[choices[d]]);
+            }
+            position = position.add(BigInteger.ONE);
+            action.accept(tokens);
+            return true;
+        }
+
+        // descends to the sentence of the given rank
+        private void seek(BigInteger rank) {
+            states = new int[maxLength + 1];
+            choices = new int[maxLength];
+            length = 0;
+            while (rank.compareTo(exact(length, start)) >= 0) {
+                rank = rank.subtract(exact(length, start));
+                length++;
+            }
+            states[0] = start;
+            for (int d = 0; d < length; d++) {
+                int s = states[d];
+                int remaining = length - d - 1;
+                for (int k = offsets.get(s); k < offsets.get(s + 1); k++) {
+                    BigInteger c = exact(remaining, targets.get(order[k]));
+                    if (rank.compareTo(c) < 0) {
+                        choices[d] = k;
+                        states[d + 1] = targets.get(order[k]);
+                        break;
+                    }
+                    rank = rank.subtract(c);
+                }
+            }
+        }
+
+        // moves from the current sentence to the next one
+        private void step() {
+            for (int d = length - 1; d >= 0; d--) {
+                int k = viable(states[d], choices[d] + 1, length - d - 1);
+                if (k >= 0) {
+                    choices[d] = k;
+                    states[d + 1] = targets.get(order[k]);
+                    descend(d + 1);
+                    return;
+                }
+            }
+            do {
+                length++;
+            } while (exact(length, start).signum() == 0);
+            descend(0);
+        }
+
+        // takes the first transition that still leads to an accepted
+        // sentence of the current length at every depth from {@code from}
+        private void descend(int from) {
+            for (int d = from; d < length; d++) {
+                int k = viable(states[d], offsets.get(states[d]), length - d - 1);
+                choices[d] = k;
+                states[d + 1] = targets.get(order[k]);
+            }
+        }
+
+        private int viable(int state, int from, int remaining) {
+            for (int k = from; k < offsets.get(state + 1); k++) {
+                if (exact(remaining, targets.get(order[k])).signum() != 0) {
+                    return k;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Spliterator<int[]> trySplit() {
+            BigInteger remaining = end.subtract(position);
+            if (remaining.compareTo(BigInteger.TWO) < 0) {
+                return null;
+            }
+            BigInteger middle = position.add(remaining.shiftRight(1));
+            // the prefix carries on from where this cursor stands
+            Cursor prefix = new Cursor(position, middle);
+            prefix.length = length;
+            prefix.states = states;
+            prefix.choices = choices;
+            position = middle;
+            length = -1;
+            states = null;
+            choices = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            BigInteger remaining = end.subtract(position);
+            return remaining.bitLength() < 63 ? remaining.longValue() : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            int sized = total.bitLength() < 63 ? SIZED | SUBSIZED : 0;
+            return ORDERED | NONNULL | IMMUTABLE | sized;
+        }
+    }
+}
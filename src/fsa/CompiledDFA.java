@@ -0,0 +1,379 @@
+package fsa;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable deterministic acceptor frozen from an {@link FSA}. Transitions
+ * are stored per state, sorted by label id, and a compiled automaton
+ * additionally as a dense state x label table when that table is small
+ * enough; one loaded from a snapshot searches the mapped file instead. Instances never
+ * change after construction and can be shared freely between threads, and
+ * can be saved as snapshots that load by memory-mapping the file.
+ */
+public final class CompiledDFA {
+
+    public static final int NONE = -1;
+
+    private static final long DENSE_LIMIT = 1 << 24;
+
+    private final SymbolTable symbols;
+    private final int start;
+    private final int stateCount;
+    // heap arrays when compiled, views of a mapped file when loaded
+    private final IntBuffer offsets;
+    private final IntBuffer labels;
+    private final IntBuffer targets;
+    private final LongBuffer accepting;
+    private final int alphabetSize;
+    private final int[] dense;
+
+    CompiledDFA(SymbolTable symbols, int start, IntBuffer offsets, IntBuffer labels, IntBuffer targets,
+            LongBuffer accepting) {
+        this(symbols, start, offsets, labels, targets, accepting, true);
+    }
+
+    CompiledDFA(SymbolTable symbols, int start, IntBuffer offsets, IntBuffer labels, IntBuffer targets,
+            LongBuffer accepting, boolean tabulate) {
+        this.symbols = symbols;
+        this.start = start;
+        this.stateCount = offsets.limit() - 1;
+        this.offsets = offsets;
+        this.labels = labels;
+        this.targets = targets;
+        this.accepting = accepting;
+        this.alphabetSize = symbols.size();
+        if (tabulate && (long) stateCount * alphabetSize <= DENSE_LIMIT) {
+            dense = new int[stateCount * alphabetSize];
+            Arrays.fill(dense, NONE);
+            for (int s = 0; s < stateCount; s++) {
+                for (int i = offsets.get(s); i < offsets.get(s + 1); i++) {
+                    dense[s * alphabetSize + labels.get(i)] = targets.get(i);
+                }
+            }
+        } else {
+            dense = null;
+        }
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public int getStartState() {
+        return start;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getTransitionCount() {
+        return labels.limit();
+    }
+
+    public boolean isAccepting(int state) {
+        return (accepting.get(state >>> 6) & (1L << state)) != 0;
+    }
+
+    /** Returns the state reached from {@code state} on {@code label}, or NONE. */
+    public int next(int state, int label) {
+        if (dense != null) {
+            return label >= 0 && label < alphabetSize ? dense[state * alphabetSize + label] : NONE;
+        }
+        int low = offsets.get(state);
+        int high = offsets.get(state + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midLabel = labels.get(mid);
+            if (midLabel < label) {
+                low = mid + 1;
+            } else if (midLabel > label) {
+                high = mid - 1;
+            } else {
+                return targets.get(mid);
+            }
+        }
+        return NONE;
+    }
+
+    public boolean accepts(int[] tokens) {
+        int state = start;
+        for (int label : tokens) {
+            if (label < 0) {
+                return false;
+            }
+            state = next(state, label);
+            if (state == NONE) {
+                return false;
+            }
+        }
+        return isAccepting(state);
+    }
+
+    /** Tokenizes {@code sentence} the same way as {@link FSA#ingestSentence(CharSequence)}. */
+    public boolean accepts(CharSequence sentence) {
+        int end = sentence.length();
+        while (end > 0 && sentence.charAt(end - 1) == ' ') {
+            end--;
+        }
+        int state = start;
+        if (end > 0 || sentence.length() == 0) {
+            int tokenStart = 0;
+            for (int i = 0; i <= end; i++) {
+                if (i == end || sentence.charAt(i) == ' ') {
+                    int label = symbols.lookup(sentence, tokenStart, i);
+                    if (label == SymbolTable.UNKNOWN) {
+                        return false;
+                    }
+                    state = next(state, label);
+                    if (state == NONE) {
+                        return false;
+                    }
+                    tokenStart = i + 1;
+                }
+            }
+        }
+        return isAccepting(state);
+    }
+
+    public boolean[] acceptAll(List<? extends CharSequence> sentences) {
+        boolean[] accepted = new boolean[sentences.size()];
+        IntStream.range(0, accepted.length).parallel()
+                .forEach(i -> accepted[i] = accepts(sentences.get(i)));
+        return accepted;
+    }
+
+    public boolean[] acceptAll(Stream<? extends CharSequence> sentences) {
+        int[] accepted = sentences.parallel().mapToInt(s -> accepts(s) ? 1 : 0).toArray();
+        boolean[] result = new boolean[accepted.length];
+        for (int i = 0; i < accepted.length; i++) {
+            result[i] = accepted[i] != 0;
+        }
+        return result;
+    }
+
+    /**
+     * Counts the accepted sentences of at most {@code maxLength} tokens
+     * without listing them, in time proportional to {@code maxLength} times
+     * the number of transitions.
+     */
+    public BigInteger countAccepted(int maxLength) {
+        return AcceptedSentences.count(this, maxLength);
+    }
+
+    /**
+     * Lists the accepted sentences of at most {@code maxLength} tokens as
+     * label ids, shortest first and otherwise ordered token by token as
+     * Strings. Sentences are produced one at a time as the stream is
+     * consumed, and a parallel stream splits the list into ranges of equal
+     * size. Setting up takes a table of counts with {@code maxLength + 1}
+     * entries per state.
+     */
+    public Stream<int[]> acceptedSentences(int maxLength) {
+        return StreamSupport.stream(new AcceptedSentences(this, maxLength).spliterator(), false);
+    }
+
+    /** Writes this automaton in the binary snapshot format, see {@link #loadSnapshot(Path)}. */
+    public void writeSnapshot(Path file) throws IOException {
+        Snapshot.write(this, file);
+    }
+
+    /**
+     * Maps a snapshot file into a read-only automaton. States and
+     * transitions are read straight from the mapping; only the labels are
+     * decoded into a symbol table. The header is checked, but not the
+     * transitions, so this takes the same time however large the automaton
+     * is; a damaged body shows up as wrong answers or exceptions later.
+     */
+    public static CompiledDFA loadSnapshot(Path file) throws IOException {
+        return Snapshot.load(file, false);
+    }
+
+    /**
+     * Like {@link #loadSnapshot(Path)}, but with {@code verify} also reads
+     * the whole file once to check its checksum and that every transition
+     * stays within the automaton.
+     */
+    public static CompiledDFA loadSnapshot(Path file, boolean verify) throws IOException {
+        return Snapshot.load(file, verify);
+    }
+
+    IntBuffer offsets() {
+        return offsets.duplicate();
+    }
+
+    IntBuffer labels() {
+        return labels.duplicate();
+    }
+
+    IntBuffer targets() {
+        return targets.duplicate();
+    }
+
+    LongBuffer accepting() {
+        return accepting.duplicate();
+    }
+
+    static CompiledDFA compile(TransitionGraph graph, SymbolTable symbols, int start) {
+        SymbolTable frozen = new SymbolTable(symbols);
+        return graph.isDeterministic() ? renumber(graph, frozen, start) : determinize(graph, frozen, start);
+    }
+
+    // numbers the states reachable from start in breadth-first order
+    private static CompiledDFA renumber(TransitionGraph graph, SymbolTable symbols, int start) {
+        int[] ids = new int[graph.stateCount()];
+        Arrays.fill(ids, NONE);
+        int[] order = new int[graph.liveStates()];
+        int count = 0;
+        ids[start] = count;
+        order[count++] = start;
+        Builder builder = new Builder();
+        for (int head = 0; head < count; head++) {
+            int s = order[head];
+            builder.beginState(graph.isAccepting(s));
+            for (int e = graph.firstOut(s); e != NONE; e = graph.nextOut(e)) {
+                int target = graph.target(e);
+                if (ids[target] == NONE) {
+                    ids[target] = count;
+                    order[count++] = target;
+                }
+                builder.addTransition(graph.label(e), ids[target]);
+            }
+            builder.endState();
+        }
+        return builder.build(symbols, 0);
+    }
+
+    // subset construction over the states reachable from start
+    private static CompiledDFA determinize(TransitionGraph graph, SymbolTable symbols, int start) {
+        Map<StateSet, Integer> ids = new HashMap<>();
+        List<StateSet> order = new ArrayList<>();
+        StateSet initial = new StateSet(new int[] {start});
+        ids.put(initial, 0);
+        order.add(initial);
+        Builder builder = new Builder();
+        for (int head = 0; head < order.size(); head++) {
+            int[] members = order.get(head).members;
+            boolean accepting = false;
+            int edgeCount = 0;
+            for (int s : members) {
+                accepting |= graph.isAccepting(s);
+                for (int e = graph.firstOut(s); e != NONE; e = graph.nextOut(e)) {
+                    edgeCount++;
+                }
+            }
+            long[] moves = new long[edgeCount];
+            int m = 0;
+            for (int s : members) {
+                for (int e = graph.firstOut(s); e != NONE; e = graph.nextOut(e)) {
+                    moves[m++] = ((long) graph.label(e) << 32) | graph.target(e);
+                }
+            }
+            Arrays.sort(moves);
+            builder.beginState(accepting);
+            int i = 0;
+            while (i < moves.length) {
+                int label = (int) (moves[i] >>> 32);
+                int j = i;
+                while (j < moves.length && (int) (moves[j] >>> 32) == label) {
+                    j++;
+                }
+                int[] targetSet = new int[j - i];
+                int size = 0;
+                for (int k = i; k < j; k++) {
+                    int target = (int) moves[k];
+                    if (size == 0 || targetSet[size - 1] != target) {
+                        targetSet[size++] = target;
+                    }
+                }
+                StateSet next = new StateSet(Arrays.copyOf(targetSet, size));
+                Integer id = ids.get(next);
+                if (id == null) {
+                    id = order.size();
+                    ids.put(next, id);
+                    order.add(next);
+                }
+                builder.addTransition(label, id);
+                i = j;
+            }
+            builder.endState();
+        }
+        return builder.build(symbols, 0);
+    }
+
+    private static final class StateSet {
+        private final int[] members;
+        private final int hash;
+
+        StateSet(int[] members) {
+            this.members = members;
+            this.hash = Arrays.hashCode(members);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StateSet && Arrays.equals(members, ((StateSet) obj).members);
+        }
+    }
+
+    private static final class Builder {
+        private int[] offsets = new int[16];
+        private long[] transitions = new long[16];
+        private int stateCount;
+        private int transitionCount;
+        private int stateStart;
+        private final BitSet accepting = new BitSet();
+
+        void beginState(boolean isAccepting) {
+            if (isAccepting) {
+                accepting.set(stateCount);
+            }
+            stateStart = transitionCount;
+        }
+
+        void addTransition(int label, int target) {
+            if (transitionCount == transitions.length) {
+                transitions = Arrays.copyOf(transitions, 2 * transitionCount);
+            }
+            transitions[transitionCount++] = ((long) label << 32) | target;
+        }
+
+        void endState() {
+            Arrays.sort(transitions, stateStart, transitionCount);
+            if (stateCount + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+            offsets[++stateCount] = transitionCount;
+        }
+
+        CompiledDFA build(SymbolTable symbols, int start) {
+            int[] labels = new int[transitionCount];
+            int[] targets = new int[transitionCount];
+            for (int i = 0; i < transitionCount; i++) {
+                labels[i] = (int) (transitions[i] >>> 32);
+                targets[i] = (int) transitions[i];
+            }
+            long[] acceptingWords = Arrays.copyOf(accepting.toLongArray(), (stateCount + 63) / 64);
+            return new CompiledDFA(symbols, start, IntBuffer.wrap(Arrays.copyOf(offsets, stateCount + 1)),
+                    IntBuffer.wrap(labels), IntBuffer.wrap(targets), LongBuffer.wrap(acceptingWords));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package fsa;
+
+/**
+ * Count-min sketch over long keys (Cormode and Muthukrishnan): a few rows
+ * of counters, each indexed by its own hash of the key. Here a key is
+ * given a value rather than counted up, and each counter keeps the largest
+ * value of the keys that hash to it. A key's estimate is the smallest of
+ * its counters, so it is never below the last value the key was given, and
+ * exceeds it only where colliding keys were given more. The memory stays
+ * fixed however many keys there are.
+ */
+final class CountMinSketch {
+
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+        0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L
+    };
+
+    private final int width;
+    private final IntColumn counts;
+
+    /** {@code width} counters per row; must be a power of two. */
+    CountMinSketch(int width, boolean offHeap) {
+        if (Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("width must be a power of two: " + width);
+        }
+        this.width = width;
+        counts = new IntColumn(0, offHeap);
+        counts.ensureCapacity(DEPTH * width);
+    }
+
+    private CountMinSketch(CountMinSketch other) {
+        width = other.width;
+        counts = other.counts.snapshot();
+    }
+
+    /** Copy of the counters that shares their pages until either side writes. */
+    CountMinSketch snapshot() {
+        return new CountMinSketch(this);
+    }
+
+    /** Makes the estimate of {@code key} at least {@code value}. */
+    void raise(long key, int value) {
+        for (int row = 0; row < DEPTH; row++) {
+            int slot = slot(row, key);
+            if (counts.get(slot) < value) {
+                counts.set(slot, value);
+            }
+        }
+    }
+
+    int estimate(long key) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counts.get(slot(row, key)));
+        }
+        return estimate;
+    }
+
+    private int slot(int row, long key) {
+        long h = (key + SEEDS[row]) * 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return row * width + ((int) h & (width - 1));
+    }
+
+    long bytes() {
+        return counts.bytes();
+    }
+}
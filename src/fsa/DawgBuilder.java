@@ -0,0 +1,181 @@
+package fsa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the minimal acyclic automaton of a lexicographically sorted list
+ * of sentences in one pass, following Daciuk et al., "Incremental
+ * Construction of Minimal Acyclic Finite-State Automata". Only the path of
+ * the previous sentence is ever unfinished: when the next sentence leaves
+ * that path, the states below the branch point can no longer change, so
+ * each is either replaced by an equivalent state from the register or
+ * added to it. Replaced states are removed and their ids reused, so the
+ * graph never holds much more than the minimal automaton. A replaced state
+ * hands its frequencies to the equivalent one, so every count covers all
+ * the sentences that share it.
+ */
+final class DawgBuilder {
+
+    private final TransitionGraph graph;
+    private final DisjointSets mergedStates;
+    private final SymbolTable symbols;
+    private final Map<Signature, Integer> register = new HashMap<>();
+
+    // tokens of the previous sentence and the states along its path;
+    // path[0] is the start state
+    private int[] previous = new int[16];
+    private int previousLength;
+    private int[] path = new int[17];
+    private boolean first = true;
+
+    DawgBuilder(TransitionGraph graph, DisjointSets mergedStates, SymbolTable symbols, int start) {
+        this.graph = graph;
+        this.mergedStates = mergedStates;
+        this.symbols = symbols;
+        path[0] = start;
+    }
+
+    void add(CharSequence sentence, int[] tokens, int length) {
+        int common = 0;
+        while (common < length && common < previousLength && tokens[common] == previous[common]) {
+            common++;
+        }
+        if (!first && (common == length ? length < previousLength
+                : common < previousLength && compare(tokens[common], previous[common]) < 0)) {
+            throw new IllegalArgumentException("sentences are not sorted: \"" + sentence
+                    + "\" comes after a sentence that should follow it");
+        }
+        first = false;
+        registerPath(common);
+        if (path.length < length + 1) {
+            path = Arrays.copyOf(path, Math.max(length + 1, 2 * path.length));
+            previous = Arrays.copyOf(previous, path.length - 1);
+        }
+        graph.addStateFrequency(path[0], 1);
+        for (int i = 0; i < length; i++) {
+            int edge;
+            if (i < common) {
+                // the path's next state is always the most recent child
+                edge = graph.firstOut(path[i]);
+            } else {
+                int state = addState();
+                edge = graph.addEdge(path[i], tokens[i], state);
+                path[i + 1] = state;
+                previous[i] = tokens[i];
+            }
+            graph.addEdgeFrequency(edge, 1);
+            graph.addStateFrequency(path[i + 1], 1);
+        }
+        previousLength = length;
+        graph.setAccepting(path[length], true);
+        graph.addFinalFrequency(path[length], 1);
+    }
+
+    /** Registers the rest of the last sentence's path; call once after the last add. */
+    void finish() {
+        registerPath(0);
+    }
+
+    // tokens are ordered by the UTF-8 bytes of their labels, like the words
+    // of lines sorted with LC_ALL=C
+    private int compare(int a, int b) {
+        return compareCodePoints(symbols.label(a), symbols.label(b));
+    }
+
+    // code point order, which is the order of the UTF-8 bytes; String's
+    // own compareTo goes by UTF-16 units and puts the surrogates of
+    // supplementary characters before U+E000 to U+FFFF
+    static int compareCodePoints(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y) {
+                if (x >= Character.MIN_SURROGATE && y >= Character.MIN_SURROGATE) {
+                    // lift the surrogates above the rest of the BMP
+                    x += x <= Character.MAX_SURROGATE ? 0x2000 : -0x800;
+                    y += y <= Character.MAX_SURROGATE ? 0x2000 : -0x800;
+                }
+                return x - y;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    // replaces or registers the states of the previous path below depth
+    // keep, deepest first so every child is already canonical
+    private void registerPath(int keep) {
+        for (int depth = previousLength; depth > keep; depth--) {
+            int state = path[depth];
+            Signature signature = signature(state);
+            Integer equivalent = register.get(signature);
+            if (equivalent == null) {
+                register.put(signature, state);
+                continue;
+            }
+            // the state is its parent's most recent child, so the new edge
+            // takes the old one's place at the head of the parent's list
+            int parent = path[depth - 1];
+            int parentEdge = graph.firstOut(parent);
+            int parentFrequency = graph.edgeFrequency(parentEdge);
+            graph.removeEdge(parentEdge);
+            graph.addStateFrequency(equivalent, graph.stateFrequency(state));
+            graph.addFinalFrequency(equivalent, graph.finalFrequency(state));
+            while (graph.firstOut(state) != TransitionGraph.NONE) {
+                int e = graph.firstOut(state);
+                int kept = graph.findEdge(equivalent, graph.label(e), graph.target(e));
+                graph.addEdgeFrequency(kept, graph.edgeFrequency(e));
+                graph.removeEdge(e);
+            }
+            graph.releaseState(state);
+            int edge = graph.addEdge(parent, previous[depth - 1], equivalent);
+            graph.addEdgeFrequency(edge, parentFrequency);
+        }
+        previousLength = Math.min(previousLength, keep);
+    }
+
+    private int addState() {
+        int state = graph.addState();
+        mergedStates.add(state);
+        return state;
+    }
+
+    // acceptance plus the (label, target) pairs in list order; children are
+    // added in label order, so equivalent states list them identically
+    private Signature signature(int state) {
+        int size = 1;
+        for (int e = graph.firstOut(state); e != TransitionGraph.NONE; e = graph.nextOut(e)) {
+            size += 2;
+        }
+        int[] key = new int[size];
+        key[0] = graph.isAccepting(state) ? 1 : 0;
+        int i = 1;
+        for (int e = graph.firstOut(state); e != TransitionGraph.NONE; e = graph.nextOut(e)) {
+            key[i++] = graph.label(e);
+            key[i++] = graph.target(e);
+        }
+        return new Signature(key);
+    }
+
+    private static final class Signature {
+        private final int[] key;
+        private final int hash;
+
+        Signature(int[] key) {
+            this.key = key;
+            this.hash = Arrays.hashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Signature && Arrays.equals(key, ((Signature) obj).key);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package fsa;
+
+/**
+ * Disjoint-set forest over state ids, with union by rank and path
+ * compression. Each set also threads its members through a circular list
+ * so the states folded into a representative can be listed for display.
+ * <p>
+ * Until the first union every state is a set of its own, so the columns
+ * are only allocated then; NONE in them stands for the state itself.
+ */
+final class DisjointSets {
+
+    private final boolean offHeap;
+    private IntColumn parent;
+    private IntColumn rank;
+    private IntColumn nextMember;
+    private int size;
+
+    DisjointSets(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    private DisjointSets(DisjointSets other) {
+        offHeap = other.offHeap;
+        size = other.size;
+        if (other.parent != null) {
+            parent = other.parent.snapshot();
+            rank = other.rank.snapshot();
+            nextMember = other.nextMember.snapshot();
+        }
+    }
+
+    /**
+     * Read-only copy of the current sets. Only {@link #nextMember(int)} may
+     * be used on it, since find() compresses paths as it goes.
+     */
+    DisjointSets snapshot() {
+        return new DisjointSets(this);
+    }
+
+    void add(int element) {
+        size = Math.max(size, element + 1);
+        if (parent != null) {
+            parent.ensureCapacity(size);
+            rank.ensureCapacity(size);
+            nextMember.ensureCapacity(size);
+        }
+    }
+
+    int find(int element) {
+        if (parent == null) {
+            return element;
+        }
+        int root = element;
+        for (int p = parent.get(root); p != TransitionGraph.NONE; p = parent.get(root)) {
+            root = p;
+        }
+        while (element != root && parent.get(element) != root) {
+            int next = parent.get(element);
+            parent.set(element, root);
+            element = next;
+        }
+        return root;
+    }
+
+    /** Joins the sets of {@code a} and {@code b} and returns the new representative. */
+    int union(int a, int b) {
+        if (parent == null) {
+            parent = column(TransitionGraph.NONE);
+            rank = column(0);
+            nextMember = column(TransitionGraph.NONE);
+        }
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return rootA;
+        }
+        if (rank.get(rootA) < rank.get(rootB)) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        parent.set(rootB, rootA);
+        if (rank.get(rootA) == rank.get(rootB)) {
+            rank.set(rootA, rank.get(rootA) + 1);
+        }
+        // splice the two circular member lists together
+        int next = nextMember(rootA);
+        nextMember.set(rootA, nextMember(rootB));
+        nextMember.set(rootB, next);
+        return rootA;
+    }
+
+    int nextMember(int element) {
+        int next = nextMember == null ? TransitionGraph.NONE : nextMember.get(element);
+        return next == TransitionGraph.NONE ? element : next;
+    }
+
+    long bytes() {
+        return parent == null ? 0 : parent.bytes() + rank.bytes() + nextMember.bytes();
+    }
+
+    private IntColumn column(int defaultValue) {
+        IntColumn column = new IntColumn(defaultValue, offHeap);
+        column.ensureCapacity(size);
+        return column;
+    }
+}
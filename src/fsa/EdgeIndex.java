@@ -0,0 +1,238 @@
+package fsa;
+
+/**
+ * Multimap from an edge's (first, second) key columns to the edge ids
+ * carrying that key. Each distinct key owns one open-addressing slot that
+ * holds the head of a doubly linked chain of its edges, so lookups, and
+ * whether a key has more than one edge, stay O(1) however many edges share
+ * it; only a full count walks the chain. Keys are read straight from the
+ * graph's columns, so an edge must be removed before either key column
+ * changes and re-inserted afterwards.
+ * <p>
+ * The backward links of the chains only matter for removal, so like the
+ * graph's own they are built at the first remove().
+ */
+final class EdgeIndex {
+
+    static final int EMPTY = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final IntColumn first;
+    private final IntColumn second;
+    private final IntColumn nextSame;
+    // null until the first remove()
+    private IntColumn prevSame;
+    private IntColumn heads;
+    private final boolean offHeap;
+    private int capacity;
+    private int keys;
+    private int edges;
+
+    EdgeIndex(IntColumn first, IntColumn second, boolean offHeap) {
+        this.first = first;
+        this.second = second;
+        this.offHeap = offHeap;
+        nextSame = new IntColumn(EMPTY, offHeap);
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private EdgeIndex(EdgeIndex other, IntColumn first, IntColumn second) {
+        this.first = first;
+        this.second = second;
+        nextSame = other.nextSame.snapshot();
+        if (other.prevSame != null) {
+            prevSame = other.prevSame.snapshot();
+        }
+        heads = other.heads.snapshot();
+        capacity = other.capacity;
+        keys = other.keys;
+        edges = other.edges;
+        offHeap = other.offHeap;
+    }
+
+    /** Read-only copy of this index over snapshots of its key columns. */
+    EdgeIndex snapshot(IntColumn first, IntColumn second) {
+        return new EdgeIndex(this, first, second);
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        heads = new IntColumn(EMPTY, offHeap);
+        heads.ensureCapacity(newCapacity);
+    }
+
+    private static int hash(int a, int b) {
+        long h = ((long) a << 32) ^ (b & 0xffffffffL);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private int home(int edge) {
+        return hash(first.get(edge), second.get(edge)) & (capacity - 1);
+    }
+
+    // slot holding key (a, b), or the empty slot where it would go
+    private int slot(int a, int b) {
+        int mask = capacity - 1;
+        int slot = hash(a, b) & mask;
+        int head;
+        while ((head = heads.get(slot)) != EMPTY) {
+            if (first.get(head) == a && second.get(head) == b) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Adds the edges {@code from} up to {@code to} and returns those that
+     * made a key reach exactly two edges. The table is grown once up front
+     * rather than doubling its way there.
+     */
+    IntQueue insertAll(int from, int to) {
+        long needed = 2L * (keys + to - from);
+        if (needed > capacity) {
+            rehash(Integer.highestOneBit((int) Math.min(needed, 1 << 30) - 1) << 1);
+        }
+        IntQueue conflicts = new IntQueue();
+        for (int edge = from; edge < to; edge++) {
+            if (insert(edge)) {
+                conflicts.add(edge);
+            }
+        }
+        return conflicts;
+    }
+
+    /** Adds {@code edge} and returns true if exactly two edges now share its key. */
+    boolean insert(int edge) {
+        edges = Math.max(edges, edge + 1);
+        nextSame.ensureCapacity(edges);
+        int slot = slot(first.get(edge), second.get(edge));
+        int head = heads.get(slot);
+        nextSame.set(edge, head);
+        heads.set(slot, edge);
+        if (prevSame != null) {
+            prevSame.ensureCapacity(edges);
+            prevSame.set(edge, EMPTY);
+        }
+        if (head != EMPTY) {
+            if (prevSame != null) {
+                prevSame.set(head, edge);
+            }
+            return nextSame.get(head) == EMPTY;
+        }
+        if (2 * ++keys > capacity) {
+            rehash(2 * capacity);
+        }
+        return false;
+    }
+
+    /** Removes {@code edge} and returns true if exactly one edge still has its key. */
+    boolean remove(int edge) {
+        ensureRemovable();
+        int slot = slot(first.get(edge), second.get(edge));
+        int prev = prevSame.get(edge);
+        int next = nextSame.get(edge);
+        if (prev == EMPTY) {
+            heads.set(slot, next);
+        } else {
+            nextSame.set(prev, next);
+        }
+        if (next != EMPTY) {
+            prevSame.set(next, prev);
+        }
+        int head = heads.get(slot);
+        if (head == EMPTY) {
+            deleteSlot(slot);
+            return false;
+        }
+        return nextSame.get(head) == EMPTY;
+    }
+
+    private void ensureRemovable() {
+        if (prevSame != null) {
+            return;
+        }
+        prevSame = new IntColumn(EMPTY, offHeap);
+        prevSame.ensureCapacity(edges);
+        for (int slot = 0; slot < capacity; slot++) {
+            int prev = EMPTY;
+            for (int e = heads.get(slot); e != EMPTY; e = nextSame.get(e)) {
+                prevSame.set(e, prev);
+                prev = e;
+            }
+        }
+    }
+
+    // backward-shift deletion keeps every probe run contiguous
+    private void deleteSlot(int hole) {
+        int mask = capacity - 1;
+        int slot = hole;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int head = heads.get(slot);
+            if (head == EMPTY) {
+                break;
+            }
+            int home = home(head);
+            boolean stays = hole <= slot ? hole < home && home <= slot : hole < home || home <= slot;
+            if (!stays) {
+                heads.set(hole, head);
+                hole = slot;
+            }
+        }
+        heads.set(hole, EMPTY);
+        keys--;
+    }
+
+    /** Returns the first edge keyed (a, b), or EMPTY. */
+    int first(int a, int b) {
+        return heads.get(slot(a, b));
+    }
+
+    /** Returns the edge after {@code edge} with the same key, or EMPTY. */
+    int next(int edge) {
+        return nextSame.get(edge);
+    }
+
+    /** True if more than one edge is keyed (a, b). */
+    boolean several(int a, int b) {
+        int head = first(a, b);
+        return head != EMPTY && nextSame.get(head) != EMPTY;
+    }
+
+    int count(int a, int b) {
+        int count = 0;
+        for (int e = first(a, b); e != EMPTY; e = nextSame.get(e)) {
+            count++;
+        }
+        return count;
+    }
+
+    private void rehash(int newCapacity) {
+        IntColumn oldHeads = heads;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            int head = oldHeads.get(i);
+            if (head != EMPTY) {
+                int slot = home(head);
+                while (heads.get(slot) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                heads.set(slot, head);
+            }
+        }
+    }
+
+    long bytes() {
+        return heads.bytes() + nextSame.bytes() + (prevSame == null ? 0 : prevSame.bytes());
+    }
+}
@@ -0,0 +1,144 @@
+package fsa;
+
+/**
+ * Set of edge ids hashed on the whole (source, label, target) triple, so an
+ * exact edge is found in O(1) even when both of its states have many edges
+ * with the same label. Like {@link EdgeIndex}, keys are read from the
+ * graph's columns, so an edge must be removed before its source or target
+ * changes and re-inserted afterwards.
+ */
+final class EdgeSet {
+
+    static final int EMPTY = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final IntColumn sources;
+    private final IntColumn labels;
+    private final IntColumn targets;
+    private final boolean offHeap;
+    private IntColumn slots;
+    private int capacity;
+    private int size;
+
+    /** Sized for {@code expected} edges, so inserting that many never rehashes. */
+    EdgeSet(IntColumn sources, IntColumn labels, IntColumn targets, int expected, boolean offHeap) {
+        this.sources = sources;
+        this.labels = labels;
+        this.targets = targets;
+        this.offHeap = offHeap;
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 2 * (long) expected + 2) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    private EdgeSet(EdgeSet other, IntColumn sources, IntColumn labels, IntColumn targets) {
+        this.sources = sources;
+        this.labels = labels;
+        this.targets = targets;
+        offHeap = other.offHeap;
+        slots = other.slots.snapshot();
+        capacity = other.capacity;
+        size = other.size;
+    }
+
+    /** Read-only copy of this set over snapshots of its key columns. */
+    EdgeSet snapshot(IntColumn sources, IntColumn labels, IntColumn targets) {
+        return new EdgeSet(this, sources, labels, targets);
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        slots = new IntColumn(EMPTY, offHeap);
+        slots.ensureCapacity(newCapacity);
+    }
+
+    private static int hash(int source, int label, int target) {
+        long h = ((long) source << 32) ^ (label & 0xffffffffL);
+        h = h * 0x9e3779b97f4a7c15L + target;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private int home(int edge) {
+        return hash(sources.get(edge), labels.get(edge), targets.get(edge)) & (capacity - 1);
+    }
+
+    /** Returns the edge from {@code source} on {@code label} to {@code target}, or EMPTY. */
+    int find(int source, int label, int target) {
+        int mask = capacity - 1;
+        int slot = hash(source, label, target) & mask;
+        int edge;
+        while ((edge = slots.get(slot)) != EMPTY) {
+            if (sources.get(edge) == source && labels.get(edge) == label && targets.get(edge) == target) {
+                return edge;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    void insert(int edge) {
+        int mask = capacity - 1;
+        int slot = home(edge);
+        while (slots.get(slot) != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        slots.set(slot, edge);
+        if (2 * ++size > capacity) {
+            rehash(2 * capacity);
+        }
+    }
+
+    void remove(int edge) {
+        int mask = capacity - 1;
+        int hole = home(edge);
+        while (slots.get(hole) != edge) {
+            hole = (hole + 1) & mask;
+        }
+        // backward-shift deletion keeps every probe run contiguous
+        int slot = hole;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int next = slots.get(slot);
+            if (next == EMPTY) {
+                break;
+            }
+            int home = home(next);
+            boolean stays = hole <= slot ? hole < home && home <= slot : hole < home || home <= slot;
+            if (!stays) {
+                slots.set(hole, next);
+                hole = slot;
+            }
+        }
+        slots.set(hole, EMPTY);
+        size--;
+    }
+
+    private void rehash(int newCapacity) {
+        IntColumn oldSlots = slots;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            int edge = oldSlots.get(i);
+            if (edge != EMPTY) {
+                int slot = home(edge);
+                while (slots.get(slot) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots.set(slot, edge);
+            }
+        }
+    }
+
+    long bytes() {
+        return slots.bytes();
+    }
+}
@@ -1,273 +1,1419 @@
 package fsa;
 
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import edu.uci.ics.jung.graph.DirectedSparseMultigraph;
+import jdk.jfr.FlightRecorder;
 
 public class FSA {
-    
-    private final Set<FSANode> nodes;
-    private FSANode start;
-    private final Set<FSANode> finalNodes;
-    private int nodeCount;
+
+    private static final int NONE = TransitionGraph.NONE;
+    private static final int SHARDS_PER_THREAD = 4;
+    // below this many states a shard is built on the heap even when off-heap,
+    // as a direct page alone holds that many ints
+    private static final int DIRECT_SHARD_STATES = 1 << 16;
+    private static final int MAP_WINDOW = 64 << 20;
+    private static final int SKETCH_WIDTH = 1 << 16;
+
+    private final boolean offHeap;
+    private TransitionGraph graph;
+    private final SymbolTable symbols;
+    // merged states share a set; its representative is the live state
+    private DisjointSets mergedStates;
+    private int start;
     private boolean mergedFinalStates;
-    private Set<FSANode> curMergeLevel;
+    // the state all accepting states were merged into, once that happened
+    private int finalState = NONE;
+    private BitSet curMergeLevel;
+    private MergeListener mergeListener;
+    // merge steps run so far, and counters of the one in progress
+    private int mergeLevel;
+    private int groupsMerged;
+    private boolean timingUpdates;
+    private long updateNanos;
+    private int stateBudget;
+    // counts of the edges pruned from states that stayed, keyed by the
+    // labels of their path from the start state; null until the first prune
+    private CountMinSketch prunedCounts;
+    // path key of the state the sentence being ingested has reached
+    private long prefix;
+    // frozen copies by checkpoint id; null once released
+    private final List<FSA> checkpoints = new ArrayList<>();
 
     public FSA() {
-        start = new FSANode(0);
-        nodeCount = 1;
-        nodes = new HashSet<>();
-        nodes.add(start);
-        finalNodes = new HashSet<>();
+        this(false);
+    }
+
+    /**
+     * With {@code offHeap} the states, transitions and merge sets are kept
+     * in direct buffers outside the Java heap, so even a huge prefix tree
+     * adds little for the garbage collector to trace. Their size is capped
+     * by {@code -XX:MaxDirectMemorySize}, which defaults to the maximum
+     * heap size.
+     */
+    public FSA(boolean offHeap) {
+        this(new SymbolTable(), offHeap);
+    }
+
+    /**
+     * Uses {@code symbols} as this automaton's label table instead of a
+     * fresh one, so that several automata can share one vocabulary and
+     * take the same label ids in {@link #ingestSentence(int[])}. Automata
+     * only read the table unless they are given sentences as text, so a
+     * table that no one interns into any more can be shared between
+     * threads.
+     */
+    public FSA(SymbolTable symbols, boolean offHeap) {
+        this.offHeap = offHeap;
+        graph = new TransitionGraph(offHeap);
+        this.symbols = symbols;
+        mergedStates = new DisjointSets(offHeap);
+        start = addState();
         mergedFinalStates = false;
-        curMergeLevel = new HashSet<>();
+        curMergeLevel = new BitSet();
     }
-    
-    private void removeNode(FSANode node) {
-        nodes.remove(node);
-        if (finalNodes.contains(node)) {
-            finalNodes.remove(node);
+
+    // read-only copy sharing the other automaton's storage
+    private FSA(FSA other, SymbolTable symbols) {
+        offHeap = other.offHeap;
+        graph = other.graph.snapshot();
+        this.symbols = symbols;
+        mergedStates = other.mergedStates.snapshot();
+        start = other.start;
+        mergedFinalStates = other.mergedFinalStates;
+        finalState = other.finalState;
+        curMergeLevel = (BitSet) other.curMergeLevel.clone();
+        mergeLevel = other.mergeLevel;
+        prunedCounts = other.prunedCounts == null ? null : other.prunedCounts.snapshot();
+    }
+
+    /**
+     * Captures the automaton as it is now. The snapshot shares the graph's
+     * pages copy-on-write, so taking one costs a copy of the page tables and
+     * the symbol table rather than of the automaton, and it stays valid
+     * while this automaton keeps ingesting and merging. Snapshots can be
+     * read from any number of threads; like every other method here, this
+     * one must be called from the thread that changes the automaton.
+     */
+    public FSASnapshot snapshot() {
+        return new FSASnapshot(new FSA(this, new SymbolTable(symbols)));
+    }
+
+    /**
+     * Records the automaton as it is now and returns an id for
+     * {@link #rollback(int)}. Like {@link #snapshot()}, this copies page
+     * tables rather than the automaton, and afterwards each page is copied
+     * once when it is first written, so a checkpoint costs about what
+     * changes after it. Checkpoints hold on to those pages until they are
+     * released.
+     */
+    public int checkpoint() {
+        // labels are only ever added, so the checkpoint can share the table
+        checkpoints.add(new FSA(this, symbols));
+        return checkpoints.size() - 1;
+    }
+
+    /**
+     * Puts the automaton back exactly as it was at checkpoint {@code id},
+     * including where merging stood, so merging on from there repeats
+     * what it did the first time. Labels interned since stay known. The
+     * checkpoint stays valid, as do later ones, so it is possible to step
+     * back and forth between them or to try a merge and undo it. Graph
+     * change listeners are told through
+     * {@link GraphChangeListener#graphRestored()}.
+     */
+    public void rollback(int id) {
+        FSA saved = checkpointed(id);
+        graph = saved.graph.restore(graph);
+        mergedStates = saved.mergedStates.snapshot();
+        start = saved.start;
+        mergedFinalStates = saved.mergedFinalStates;
+        finalState = saved.finalState;
+        curMergeLevel = (BitSet) saved.curMergeLevel.clone();
+        mergeLevel = saved.mergeLevel;
+        prunedCounts = saved.prunedCounts == null ? null : saved.prunedCounts.snapshot();
+        graph.graphRestored();
+    }
+
+    /** Drops checkpoint {@code id} and the pages only it still holds. */
+    public void releaseCheckpoint(int id) {
+        checkpointed(id);
+        checkpoints.set(id, null);
+    }
+
+    private FSA checkpointed(int id) {
+        FSA saved = id >= 0 && id < checkpoints.size() ? checkpoints.get(id) : null;
+        if (saved == null) {
+            throw new IllegalArgumentException("no checkpoint " + id);
         }
+        return saved;
     }
-        
-    public void ingestSentence(String example) {
-        String[] words = example.split(" ");
-        FSANode curNode = start;
-        FSANode nextNode;
-        for (String word: words) {
-            nextNode = curNode.nextNode(word);
-            if (nextNode == null) {
-                nextNode = new FSANode(nodeCount++);
-                nodes.add(nextNode);
-                FSAEdge edge = new FSAEdge(curNode, nextNode, word);
-                curNode.addEdge(edge);
-                nextNode.addEdge(edge);
-            }
-            curNode = nextNode;
-        }
-        finalNodes.add(curNode);
-        curNode.setAccepting(true);
-    }
-    
-    public void merge() {
+
+    private int addState() {
+        int state = graph.addState();
+        mergedStates.add(state);
+        return state;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Adds one sentence, tokenized on single spaces exactly like
+     * {@code String.split(" ")}. Known tokens are resolved in place, so no
+     * token strings are created for them.
+     * <p>
+     * Sentences can also be added after merging has started: the sentence
+     * follows the longest path the automaton already has for it, continues
+     * on fresh states and ends in the merged final state. Only the states
+     * that this touches need reconciling, so a following merge() or learn()
+     * costs in proportion to the new sentences rather than to the whole
+     * automaton.
+     */
+    public void ingestSentence(CharSequence example) {
+        int end = example.length();
+        while (end > 0 && example.charAt(end - 1) == ' ') {
+            end--;
+        }
+        int curNode = start;
+        if (end > 0 || example.length() == 0) {
+            int tokenStart = 0;
+            for (int i = 0; i <= end; i++) {
+                if (i == end || example.charAt(i) == ' ') {
+                    curNode = step(curNode, symbols.intern(example, tokenStart, i));
+                    tokenStart = i + 1;
+                }
+            }
+        }
+        accept(curNode);
+    }
+
+    /** Adds one sentence given as label ids from {@link #getSymbolTable()}. */
+    public void ingestSentence(int[] tokens) {
+        int curNode = start;
+        for (int label : tokens) {
+            curNode = step(curNode, label);
+        }
+        accept(curNode);
+    }
+
+    /**
+     * Streams a newline-delimited corpus through memory-mapped windows of the
+     * file. Tokens are resolved against the symbol table straight from the
+     * mapped bytes, which must be UTF-8. Each line is tokenized like
+     * {@link #ingestSentence(CharSequence)}, so a line of only spaces is the
+     * empty sentence; empty lines are skipped.
+     */
+    public void ingestFile(Path corpus) throws IOException {
+        try (FileChannel channel = FileChannel.open(corpus, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            long window = MAP_WINDOW;
+            while (position < size) {
+                int length = (int) Math.min(window, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int end = length;
+                if (position + length < size) {
+                    // stop after the last complete line in this window
+                    while (end > 0 && buffer.get(end - 1) != '\n') {
+                        end--;
+                    }
+                    if (end == 0) {
+                        if (window >= Integer.MAX_VALUE) {
+                            throw new IOException("line longer than " + Integer.MAX_VALUE + " bytes in " + corpus);
+                        }
+                        window = Math.min(2 * window, Integer.MAX_VALUE);
+                        continue;
+                    }
+                }
+                ingestLines(buffer, end);
+                position += end;
+            }
+        }
+    }
+
+    private void ingestLines(ByteBuffer buffer, int end) {
+        int lineStart = 0;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            ingestLine(buffer, lineStart, contentEnd);
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    // like ingestSentence, except that an empty line is no sentence at all
+    private void ingestLine(ByteBuffer buffer, int lineStart, int end) {
+        if (end == lineStart) {
+            return;
+        }
+        while (end > lineStart && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        int curNode = start;
+        if (end > lineStart) {
+            int tokenStart = lineStart;
+            for (int i = lineStart; i <= end; i++) {
+                if (i == end || buffer.get(i) == ' ') {
+                    curNode = step(curNode, symbols.intern(buffer, tokenStart, i));
+                    tokenStart = i + 1;
+                }
+            }
+        }
+        accept(curNode);
+    }
+
+    // once the final states are merged, a sentence's last state joins them
+    // right away; the graph then lists any state made nondeterministic by
+    // that for learn(), and merge() continues from the states leading in,
+    // including the final state's older sources that now share a label
+    private void accept(int state) {
+        // every sentence enters the start state once and stops here
+        graph.addStateFrequency(start, 1);
+        graph.addFinalFrequency(state, 1);
+        if (!mergedFinalStates) {
+            graph.setAccepting(state, true);
+            if (stateBudget > 0 && graph.liveStates() > stateBudget) {
+                prune();
+            }
+            return;
+        }
+        if (graph.isAccepting(state)) {
+            return;
+        }
+        if (finalState == NONE || !graph.isLive(current(finalState))) {
+            graph.setAccepting(state, true);
+            finalState = state;
+            return;
+        }
+        List<Integer> sources = new ArrayList<>();
+        for (int e = graph.firstIn(state); e != NONE; e = graph.nextIn(e)) {
+            sources.add(graph.source(e));
+        }
+        Set<Integer> nodes = new HashSet<>();
+        nodes.add(state);
+        nodes.add(current(finalState));
+        int merged = mergeNodes(nodes);
+        for (int source : sources) {
+            curMergeLevel.set(current(source));
+        }
+        if (graph.hasOutConflict(merged)) {
+            curMergeLevel.set(merged);
+        }
+        for (int e = graph.firstIn(merged); e != NONE; e = graph.nextIn(e)) {
+            if (graph.hasSeveralSources(merged, graph.label(e))) {
+                curMergeLevel.set(graph.source(e));
+            }
+        }
+    }
+
+    private int step(int curNode, int label) {
+        if (prunedCounts != null) {
+            // pruning stops with merging, so until then nothing leads back
+            // into the start state and every sentence sets off from it
+            prefix = extend(curNode == start ? 0 : prefix, label);
+        }
+        int edge = graph.findEdge(curNode, label);
+        int nextNode;
+        if (edge == NONE) {
+            nextNode = addState();
+            edge = graph.addEdge(curNode, label, nextNode);
+            if (prunedCounts != null) {
+                // a pruned path grows back with the counts it had
+                int pruned = prunedCounts.estimate(prefix);
+                graph.addEdgeFrequency(edge, pruned);
+                graph.addStateFrequency(nextNode, pruned);
+            }
+        } else {
+            nextNode = graph.target(edge);
+        }
+        graph.addEdgeFrequency(edge, 1);
+        graph.addStateFrequency(nextNode, 1);
+        return nextNode;
+    }
+
+    // keys the pruned counts by the labels on the path, since the ids of
+    // pruned states are handed out again
+    private static long extend(long prefix, int label) {
+        long h = (prefix ^ label) * 0x9e3779b97f4a7c15L;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Bounds the prefix tree built by the ingest methods to
+     * {@code maxStates} states, or lifts the bound with 0. Whenever a
+     * sentence takes the tree over the budget, the least frequent states
+     * are pruned until at most half of it is left, each together with
+     * everything below it, and their sentences are forgotten. The
+     * frequencies of the edges cut off that way go into a count-min sketch
+     * of fixed size, keyed by the labels on the path, so a path that keeps
+     * coming back regains its earlier counts instead of being pruned again
+     * for looking new. Counts recovered from the sketch may be too high
+     * where paths collide in it, never too low. The budget
+     * only applies until merging starts, and not to ingestSorted(). Pruning
+     * goes by frequencies, so a budget turns on {@link #countFrequencies()}
+     * and must likewise be set before the first sentence.
+     */
+    public void setStateBudget(int maxStates) {
+        if (maxStates < 0) {
+            throw new IllegalArgumentException("state budget must not be negative: " + maxStates);
+        }
+        if (maxStates > 0) {
+            countFrequencies();
+        }
+        stateBudget = maxStates;
+    }
+
+    /**
+     * Counts from now on how many sentences pass through, end in and leave
+     * each state, see {@link #getStateFrequency(int)} and the methods after
+     * it. The counts take three more ints per state, so they are off by
+     * default, and they must be turned on before the first sentence is
+     * ingested, as earlier sentences could not be counted any more.
+     */
+    public void countFrequencies() {
+        if (graph.countsFrequencies()) {
+            return;
+        }
+        if (mergedFinalStates || graph.liveEdges() > 0 || graph.isAccepting(start)) {
+            throw new IllegalStateException("frequencies must be counted from the first sentence on");
+        }
+        graph.countFrequencies();
+    }
+
+    // frequencies never grow along a path away from the start state, except
+    // where the sketch overestimates, so subtrees are cut from the top
+    private void prune() {
+        int[] frequencies = new int[graph.liveStates()];
+        int n = 0;
+        for (int s = 0; s < graph.stateCount(); s++) {
+            if (graph.isLive(s) && s != start) {
+                frequencies[n++] = graph.stateFrequency(s);
+            }
+        }
+        int keep = stateBudget / 2;
+        if (n <= keep) {
+            return;
+        }
+        Arrays.sort(frequencies, 0, n);
+        long threshold = (long) frequencies[n - keep - 1] + 1;
+        if (prunedCounts == null) {
+            prunedCounts = new CountMinSketch(SKETCH_WIDTH, offHeap);
+        }
+        // the path key of each state, as step() computes it
+        long[] prefixes = new long[graph.stateCount()];
+        IntQueue kept = new IntQueue();
+        IntQueue cut = new IntQueue();
+        kept.add(start);
+        while (!kept.isEmpty()) {
+            int state = kept.poll();
+            int next;
+            for (int e = graph.firstOut(state); e != NONE; e = next) {
+                next = graph.nextOut(e);
+                int target = graph.target(e);
+                long key = extend(prefixes[state], graph.label(e));
+                if (graph.stateFrequency(target) >= threshold) {
+                    prefixes[target] = key;
+                    kept.add(target);
+                    continue;
+                }
+                // the edge's count already includes whatever it regained
+                prunedCounts.raise(key, graph.edgeFrequency(e));
+                graph.removeEdge(e);
+                prefixes[target] = key;
+                cut.add(target);
+            }
+        }
+        // the edges below go into the sketch too, so a path that grows back
+        // regains its counts all the way down
+        while (!cut.isEmpty()) {
+            int state = cut.poll();
+            while (graph.firstOut(state) != NONE) {
+                int e = graph.firstOut(state);
+                int target = graph.target(e);
+                prefixes[target] = extend(prefixes[state], graph.label(e));
+                prunedCounts.raise(prefixes[target], graph.edgeFrequency(e));
+                cut.add(target);
+                graph.removeEdge(e);
+            }
+            graph.releaseState(state);
+        }
+    }
+
+    /**
+     * Builds the prefix tree for {@code sentences} on {@code parallelism}
+     * threads of a pool made for this call; see
+     * {@link #ingestAll(Collection, ForkJoinPool)}.
+     */
+    public void ingestAll(Collection<String> sentences, int parallelism) {
+        if (parallelism <= 1 || mergedFinalStates || stateBudget > 0) {
+            ingestEach(sentences);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            ingestAll(sentences, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Builds the prefix tree for {@code sentences} on the threads of
+     * {@code pool}, which callers ingesting chunk after chunk can keep for
+     * the whole run. Sentences are sharded by their first token, each
+     * shard is built into its own trie, and the tries are then grafted
+     * under the start state on the calling thread: the parts of a trie
+     * this automaton does not have yet are appended in bulk. Off-heap,
+     * only shards large enough to fill direct pages are built outside the
+     * heap. With a single thread, once merging has started, or under a
+     * state budget, this falls back to ingestSentence.
+     */
+    public void ingestAll(Collection<String> sentences, ForkJoinPool pool) {
+        if (pool.getParallelism() <= 1 || mergedFinalStates || stateBudget > 0) {
+            ingestEach(sentences);
+            return;
+        }
+        int shardCount = pool.getParallelism() * SHARDS_PER_THREAD;
+        List<List<String>> shards = new ArrayList<>();
+        // a sentence adds at most one state per character plus one
+        long[] maxStates = new long[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (String sentence : sentences) {
+            int shard = Math.floorMod(firstTokenHash(sentence), shardCount);
+            shards.get(shard).add(sentence);
+            maxStates[shard] += sentence.length() + 1;
+        }
+        boolean counting = graph.countsFrequencies();
+        List<Callable<FSA>> tasks = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            List<String> shard = shards.get(i);
+            if (shard.isEmpty()) {
+                continue;
+            }
+            boolean direct = offHeap && maxStates[i] >= DIRECT_SHARD_STATES;
+            tasks.add(() -> {
+                FSA trie = new FSA(direct);
+                if (counting) {
+                    trie.countFrequencies();
+                }
+                for (String sentence : shard) {
+                    trie.ingestSentence(sentence);
+                }
+                return trie;
+            });
+        }
+        try {
+            for (Future<FSA> trie : pool.invokeAll(tasks)) {
+                graft(trie.get());
+            }
+            graph.indexAppended(pool);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while building prefix tries", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to build prefix trie", e.getCause());
+        }
+    }
+
+    /**
+     * Builds the minimal acyclic automaton of {@code sentences} instead of
+     * a prefix tree, so shared suffixes are stored once and memory stays
+     * proportional to the minimal automaton rather than to the corpus.
+     * Sentences must be sorted token by token, comparing tokens by code
+     * point, which is the order of their UTF-8 bytes, and are read once in
+     * order, so they can be streamed.
+     * Duplicates are allowed. The automaton must not have any transitions
+     * yet; merging then starts from the minimal automaton and learns the
+     * same language as from the prefix tree.
+     */
+    public void ingestSorted(Iterable<? extends CharSequence> sentences) {
+        if (mergedFinalStates || graph.liveEdges() > 0) {
+            throw new IllegalStateException("sorted ingestion needs an automaton without transitions");
+        }
+        DawgBuilder dawg = new DawgBuilder(graph, mergedStates, symbols, start);
+        int[] tokens = new int[16];
+        for (CharSequence sentence : sentences) {
+            int end = sentence.length();
+            while (end > 0 && sentence.charAt(end - 1) == ' ') {
+                end--;
+            }
+            int length = 0;
+            if (end > 0 || sentence.length() == 0) {
+                int tokenStart = 0;
+                for (int i = 0; i <= end; i++) {
+                    if (i == end || sentence.charAt(i) == ' ') {
+                        if (length == tokens.length) {
+                            tokens = Arrays.copyOf(tokens, 2 * length);
+                        }
+                        tokens[length++] = symbols.intern(sentence, tokenStart, i);
+                        tokenStart = i + 1;
+                    }
+                }
+            }
+            dawg.add(sentence, tokens, length);
+        }
+        dawg.finish();
+    }
+
+    private void ingestEach(Collection<String> sentences) {
+        for (String sentence : sentences) {
+            ingestSentence(sentence);
+        }
+    }
+
+    private static int firstTokenHash(String sentence) {
+        int hash = 0;
+        for (int i = 0; i < sentence.length() && sentence.charAt(i) != ' '; i++) {
+            hash = 31 * hash + sentence.charAt(i);
+        }
+        return hash;
+    }
+
+    private void graft(FSA trie) {
+        int[] labels = new int[trie.symbols.size()];
+        for (int l = 0; l < labels.length; l++) {
+            labels[l] = symbols.intern(trie.symbols.label(l));
+        }
+        // walk the trie only as far as it follows paths this automaton
+        // already has, adding up what the two share; everything below
+        // those paths is appended in one go. Tries of one ingestAll() start
+        // with different tokens, so no walk reaches what another appended
+        int[] states = new int[trie.graph.stateCount()];
+        Arrays.fill(states, NONE);
+        states[trie.start] = start;
+        IntQueue pending = new IntQueue();
+        pending.add(trie.start);
+        while (!pending.isEmpty()) {
+            int from = pending.poll();
+            int into = states[from];
+            if (trie.graph.isAccepting(from)) {
+                graph.setAccepting(into, true);
+            }
+            graph.addStateFrequency(into, trie.graph.stateFrequency(from));
+            graph.addFinalFrequency(into, trie.graph.finalFrequency(from));
+            for (int e = trie.graph.firstOut(from); e != NONE; e = trie.graph.nextOut(e)) {
+                int edge = graph.findEdge(into, labels[trie.graph.label(e)]);
+                if (edge != NONE) {
+                    graph.addEdgeFrequency(edge, trie.graph.edgeFrequency(e));
+                    states[trie.graph.target(e)] = graph.target(edge);
+                    pending.add(trie.graph.target(e));
+                }
+            }
+        }
+        int firstState = graph.stateCount();
+        graph.append(trie.graph, states, labels);
+        for (int state = firstState; state < graph.stateCount(); state++) {
+            mergedStates.add(state);
+        }
+    }
+
+    /**
+     * Reports the counters of every following merge step, including whole
+     * {@link #learn()} runs, to {@code listener}; null turns reporting off.
+     * The same counters are also recorded as {@code fsa.MergeLevel} Flight
+     * Recorder events whenever a recording enables them.
+     */
+    public void setMergeListener(MergeListener listener) {
+        mergeListener = listener;
+    }
+
+    public void addGraphChangeListener(GraphChangeListener listener) {
+        graph.addListener(listener);
+    }
+
+    public void removeGraphChangeListener(GraphChangeListener listener) {
+        graph.removeListener(listener);
+    }
+
+    /**
+     * Merges one level and reports whether states are left that conflict,
+     * i.e. whether stepping on would still change the automaton. Stepping
+     * until it returns false ends where {@link #learn()} does.
+     */
+    public boolean merge() {
+        LevelProbe probe = beginLevel();
         if (!mergedFinalStates) {
             mergeFinalStates();
             mergedFinalStates = true;
         } else {
             mergeIntermediateStates();
         }
+        endLevel(probe);
+        return graph.conflictedCount() > 0;
+    }
+
+    // holds what a merge step started from; only created while someone listens
+    private static final class LevelProbe {
+        final MergeLevelEvent event;
+        final int levelSize;
+        final long edgesRewired;
+        final long selfLoopsCreated;
+        final long duplicatesDropped;
+        final long startTime = System.nanoTime();
+
+        LevelProbe(MergeLevelEvent event, int levelSize, TransitionGraph graph) {
+            this.event = event;
+            this.levelSize = levelSize;
+            this.edgesRewired = graph.edgesRewired();
+            this.selfLoopsCreated = graph.selfLoopsCreated();
+            this.duplicatesDropped = graph.duplicatesDropped();
+        }
+    }
+
+    private LevelProbe beginLevel() {
+        groupsMerged = 0;
+        // registering the event class is slow, so only do it once JFR runs
+        if (mergeListener == null && !FlightRecorder.isInitialized()) {
+            return null;
+        }
+        MergeLevelEvent event = new MergeLevelEvent();
+        if (mergeListener == null && !event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        timingUpdates = true;
+        updateNanos = 0;
+        return new LevelProbe(event, curMergeLevel.cardinality(), graph);
+    }
+
+    private void endLevel(LevelProbe probe) {
+        int level = mergeLevel++;
+        if (probe == null) {
+            return;
+        }
+        timingUpdates = false;
+        MergeLevelStats stats = new MergeLevelStats(level, probe.levelSize, groupsMerged,
+                graph.edgesRewired() - probe.edgesRewired, graph.selfLoopsCreated() - probe.selfLoopsCreated,
+                graph.duplicatesDropped() - probe.duplicatesDropped, updateNanos, graph.liveStates(),
+                graph.liveEdges(), System.nanoTime() - probe.startTime);
+        probe.event.end();
+        if (probe.event.shouldCommit()) {
+            probe.event.set(stats);
+            probe.event.commit();
+        }
+        if (mergeListener != null) {
+            mergeListener.levelMerged(stats);
+        }
+    }
+
+    /**
+     * Merges until the automaton is both deterministic and reverse
+     * deterministic. The graph keeps the list of states that are still
+     * nondeterministic in either direction up to date as edges move, so
+     * each round picks one of them directly.
+     */
+    public LearningSummary learn() {
+        long startTime = System.nanoTime();
+        int statesBefore = graph.liveStates();
+        LevelProbe probe = beginLevel();
+        if (!mergedFinalStates) {
+            mergeFinalStates();
+            mergedFinalStates = true;
+        }
+        int groupMerges = 0;
+        while (graph.conflictedCount() > 0) {
+            groupMerges += reconcile(graph.conflictedState(graph.conflictedCount() - 1));
+        }
+        curMergeLevel.clear();
+        endLevel(probe);
+        return new LearningSummary(groupMerges, statesBefore - graph.liveStates(),
+                System.nanoTime() - startTime);
+    }
+
+    private int reconcile(int state) {
+        int merges = 0;
+        for (int label : nondeterministicLabels(state, true)) {
+            int[] targets = graph.targets(current(state), label);
+            if (targets.length > 1) {
+                mergeNodes(toSet(targets));
+                merges++;
+            }
+        }
+        for (int label : nondeterministicLabels(current(state), false)) {
+            int[] sources = graph.sources(current(state), label);
+            if (sources.length > 1) {
+                mergeNodes(toSet(sources));
+                merges++;
+            }
+        }
+        return merges;
+    }
+
+    private List<Integer> nondeterministicLabels(int state, boolean outgoing) {
+        List<Integer> labels = new ArrayList<>();
+        BitSet seen = new BitSet();
+        if (outgoing) {
+            for (int e = graph.firstOut(state); e != NONE; e = graph.nextOut(e)) {
+                int label = graph.label(e);
+                if (graph.hasSeveralTargets(state, label) && !seen.get(label)) {
+                    seen.set(label);
+                    labels.add(label);
+                }
+            }
+        } else {
+            for (int e = graph.firstIn(state); e != NONE; e = graph.nextIn(e)) {
+                int label = graph.label(e);
+                if (graph.hasSeveralSources(state, label) && !seen.get(label)) {
+                    seen.set(label);
+                    labels.add(label);
+                }
+            }
+        }
+        return labels;
+    }
+
+    private static Set<Integer> toSet(int[] states) {
+        Set<Integer> set = new HashSet<>();
+        for (int s : states) {
+            set.add(s);
+        }
+        return set;
+    }
+
+    /**
+     * Tokenizes {@code sentence} the same way as
+     * {@link #ingestSentence(CharSequence)} and reports whether any path
+     * for it ends in an accepting state, following every target while the
+     * automaton is still nondeterministic.
+     */
+    public boolean accepts(CharSequence sentence) {
+        int end = sentence.length();
+        while (end > 0 && sentence.charAt(end - 1) == ' ') {
+            end--;
+        }
+        BitSet current = new BitSet();
+        current.set(start);
+        if (end > 0 || sentence.length() == 0) {
+            int tokenStart = 0;
+            for (int i = 0; i <= end && !current.isEmpty(); i++) {
+                if (i == end || sentence.charAt(i) == ' ') {
+                    int label = symbols.lookup(sentence, tokenStart, i);
+                    if (label == SymbolTable.UNKNOWN) {
+                        return false;
+                    }
+                    BitSet next = new BitSet();
+                    for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1)) {
+                        for (int target : graph.targets(s, label)) {
+                            next.set(target);
+                        }
+                    }
+                    current = next;
+                    tokenStart = i + 1;
+                }
+            }
+        }
+        for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1)) {
+            if (graph.isAccepting(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the automaton in Graphviz DOT. States are named by id, with
+     * accepting states drawn as double circles; parallel transitions are
+     * drawn as one edge listing all their labels.
+     */
+    public void writeDot(Appendable out) throws IOException {
+        out.append("digraph fsa {\n");
+        out.append("    rankdir=LR;\n");
+        out.append("    node [shape=circle];\n");
+        out.append("    start [shape=point];\n");
+        out.append("    start -> s").append(Integer.toString(start)).append(";\n");
+        Map<Integer, StringBuilder> labelsByTarget = new LinkedHashMap<>();
+        for (int s = 0; s < graph.stateCount(); s++) {
+            if (!graph.isLive(s)) {
+                continue;
+            }
+            if (graph.isAccepting(s)) {
+                out.append("    s").append(Integer.toString(s)).append(" [shape=doublecircle];\n");
+            }
+            labelsByTarget.clear();
+            for (int e = graph.firstOut(s); e != NONE; e = graph.nextOut(e)) {
+                StringBuilder labels = labelsByTarget.computeIfAbsent(graph.target(e), t -> new StringBuilder());
+                if (labels.length() > 0) {
+                    labels.append(", ");
+                }
+                labels.append(symbols.label(graph.label(e)).replace("\\", "\\\\").replace("\"", "\\\""));
+            }
+            for (Map.Entry<Integer, StringBuilder> edge : labelsByTarget.entrySet()) {
+                out.append("    s").append(Integer.toString(s)).append(" -> s").append(edge.getKey().toString())
+                        .append(" [label=\"").append(edge.getValue()).append("\"];\n");
+            }
+        }
+        out.append("}\n");
     }
-    
-    private void updateBasedOnMerges(Set<FSANode> nodes, Map<FSANode, FSANode> formerNodeToMergedNode) {
-        Iterator<FSANode> it = nodes.iterator();
-        Set<FSANode> nodesToRemove = new HashSet<>();
-        Set<FSANode> nodesToAdd = new HashSet<>();
-        while (it.hasNext()) {
-            FSANode n = it.next();
-            while (formerNodeToMergedNode.containsKey(n)) {
+
+    /**
+     * Merges every pair of equivalent states and drops states that cannot
+     * be part of an accepted sentence, leaving the canonical minimal DFA.
+     * Only a deterministic automaton, e.g. the result of {@link #learn()},
+     * can be minimized.
+     */
+    public MinimizationSummary minimize() {
+        if (!graph.isDeterministic()) {
+            throw new IllegalStateException("only a deterministic automaton can be minimized, run learn() first");
+        }
+        long startTime = System.nanoTime();
+        int statesBefore = graph.liveStates();
+        int transitionsBefore = graph.liveEdges();
+        int stateCount = graph.stateCount();
+        int[] tails = new int[transitionsBefore];
+        int[] labels = new int[transitionsBefore];
+        int[] heads = new int[transitionsBefore];
+        boolean[] accepting = new boolean[stateCount];
+        int t = 0;
+        for (int s = 0; s < stateCount; s++) {
+            if (!graph.isLive(s)) {
+                continue;
+            }
+            accepting[s] = graph.isAccepting(s);
+            for (int e = graph.firstOut(s); e != NONE; e = graph.nextOut(e)) {
+                tails[t] = s;
+                labels[t] = graph.label(e);
+                heads[t++] = graph.target(e);
+            }
+        }
+        int[] block = Minimizer.blocks(stateCount, tails, labels, heads, accepting, start);
+
+        Map<Integer, Set<Integer>> equivalent = new HashMap<>();
+        for (int s = 0; s < stateCount; s++) {
+            if (!graph.isLive(s)) {
+                continue;
+            }
+            if (block[s] == NONE) {
+                removeUseless(s);
+            } else {
+                equivalent.computeIfAbsent(block[s], b -> new HashSet<>()).add(s);
+            }
+        }
+        for (Set<Integer> states : equivalent.values()) {
+            if (states.size() > 1) {
+                mergeNodes(states);
+            }
+        }
+        remapMergeLevel();
+        return new MinimizationSummary(statesBefore, transitionsBefore, graph.liveStates(), graph.liveEdges(),
+                System.nanoTime() - startTime);
+    }
+
+    // level states that were merged away continue as their survivor
+    private void remapMergeLevel() {
+        BitSet live = new BitSet();
+        for (int node = curMergeLevel.nextSetBit(0); node >= 0; node = curMergeLevel.nextSetBit(node + 1)) {
+            if (graph.isLive(current(node))) {
+                live.set(current(node));
+            }
+        }
+        curMergeLevel = live;
+    }
+
+    /**
+     * Merges all states whose k-tails agree: the same labels can be read
+     * from them for up to {@code k} steps, reaching accepting states at the
+     * same places. Smaller k generalizes more; k = 0 only separates
+     * accepting from other states. Candidates are found by hashing
+     * signatures in k linear passes, so no pairs of states are compared.
+     * On a nondeterministic automaton this compares the unfolded paths
+     * rather than the strings, which can only merge less. The result may
+     * be nondeterministic; learn() or compile() resolves that.
+     */
+    public LearningSummary mergeKTails(int k) {
+        return mergeSignatures(k, false);
+    }
+
+    /**
+     * Like {@link #mergeKTails(int)} over the past instead of the future:
+     * merges all states that the same paths of up to {@code k} labels lead
+     * into, as in k-reversible inference.
+     */
+    public LearningSummary mergeKLeaders(int k) {
+        return mergeSignatures(k, true);
+    }
+
+    private LearningSummary mergeSignatures(int k, boolean past) {
+        long startTime = System.nanoTime();
+        int statesBefore = graph.liveStates();
+        int[] classes = TailSignatures.classes(graph, start, k, past);
+        Map<Integer, Set<Integer>> groups = new HashMap<>();
+        for (int s = 0; s < classes.length; s++) {
+            if (classes[s] != NONE) {
+                groups.computeIfAbsent(classes[s], c -> new HashSet<>()).add(s);
+            }
+        }
+        int groupMerges = 0;
+        for (Set<Integer> states : groups.values()) {
+            if (states.size() > 1) {
+                mergeNodes(states);
+                groupMerges++;
+            }
+        }
+        remapMergeLevel();
+        return new LearningSummary(groupMerges, statesBefore - graph.liveStates(), System.nanoTime() - startTime);
+    }
+
+    // the start state always stays, if only to accept nothing
+    private void removeUseless(int state) {
+        while (graph.firstOut(state) != NONE) {
+            graph.removeEdge(graph.firstOut(state));
+        }
+        while (graph.firstIn(state) != NONE) {
+            graph.removeEdge(graph.firstIn(state));
+        }
+        if (state != start) {
+            graph.removeState(state);
+        }
+    }
+
+    /**
+     * Freezes the automaton into an immutable acceptor, determinizing it
+     * first if merging has left it nondeterministic.
+     */
+    public CompiledDFA compile() {
+        return CompiledDFA.compile(graph, symbols, start);
+    }
+
+    /**
+     * Counts the sentences of at most {@code maxLength} tokens the
+     * automaton accepts, see {@link CompiledDFA#countAccepted(int)}.
+     */
+    public BigInteger countAccepted(int maxLength) {
+        return compile().countAccepted(maxLength);
+    }
+
+    /**
+     * Lists the sentences of at most {@code maxLength} tokens the automaton
+     * accepts, see {@link CompiledDFA#acceptedSentences(int)}. The stream
+     * reads a compiled copy, so it is unaffected by later changes.
+     */
+    public Stream<int[]> acceptedSentences(int maxLength) {
+        return compile().acceptedSentences(maxLength);
+    }
+
+    /** Compiles the automaton and writes it as a snapshot, see {@link CompiledDFA#loadSnapshot(Path)}. */
+    public void writeSnapshot(Path file) throws IOException {
+        compile().writeSnapshot(file);
+    }
+
+    public int getStateCount() {
+        return graph.liveStates();
+    }
+
+    public int getTransitionCount() {
+        return graph.liveEdges();
+    }
+
+    public long memoryFootprint() {
+        return graph.bytes() + mergedStates.bytes() + (prunedCounts == null ? 0 : prunedCounts.bytes());
+    }
+
+    /** Number of ingested sentences that passed through {@code state}, merged states adding up. */
+    public int getStateFrequency(int state) {
+        checkCounting();
+        return graph.stateFrequency(state);
+    }
+
+    /** Number of ingested sentences that ended in {@code state}. */
+    public int getFinalFrequency(int state) {
+        checkCounting();
+        return graph.finalFrequency(state);
+    }
+
+    /**
+     * Number of ingested sentences that left {@code state} on {@code label},
+     * a label id from {@link #getSymbolTable()}, over all of its targets.
+     */
+    public int getTransitionFrequency(int state, int label) {
+        checkCounting();
+        int frequency = 0;
+        for (int e = graph.firstOut(state); e != NONE; e = graph.nextOut(e)) {
+            if (graph.label(e) == label) {
+                frequency += graph.edgeFrequency(e);
+            }
+        }
+        return frequency;
+    }
+
+    private void checkCounting() {
+        if (!graph.countsFrequencies()) {
+            throw new IllegalStateException("frequencies are not counted, see countFrequencies()");
+        }
+    }
+
+    /**
+     * ALERGIA's compatibility test (Carrasco and Oncina) on the recorded
+     * frequencies: two states are compatible when, at confidence
+     * {@code alpha}, the Hoeffding bound cannot tell apart their
+     * probabilities of stopping or of leaving on any label, and the same
+     * holds for every pair of states reached from them on the same labels.
+     * Meant for the deterministic automata ALERGIA merges, such as the
+     * prefix tree; elsewhere each label follows its first transition.
+     */
+    public boolean isAlergiaCompatible(int a, int b, double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("alpha must be in (0, 1]: " + alpha);
+        }
+        checkCounting();
+        double bound = Math.sqrt(0.5 * Math.log(2 / alpha));
+        Set<Long> seen = new HashSet<>();
+        IntQueue pending = new IntQueue();
+        pending.add(a);
+        pending.add(b);
+        BitSet labels = new BitSet();
+        while (!pending.isEmpty()) {
+            int x = pending.poll();
+            int y = pending.poll();
+            if (x == y || !seen.add(((long) x << 32) | (y & 0xffffffffL))) {
+                continue;
+            }
+            int nx = graph.stateFrequency(x);
+            int ny = graph.stateFrequency(y);
+            if (differ(graph.finalFrequency(x), nx, graph.finalFrequency(y), ny, bound)) {
+                return false;
+            }
+            labels.clear();
+            for (int e = graph.firstOut(x); e != NONE; e = graph.nextOut(e)) {
+                labels.set(graph.label(e));
+            }
+            for (int e = graph.firstOut(y); e != NONE; e = graph.nextOut(e)) {
+                labels.set(graph.label(e));
+            }
+            for (int label = labels.nextSetBit(0); label >= 0; label = labels.nextSetBit(label + 1)) {
+                int ex = graph.findEdge(x, label);
+                int ey = graph.findEdge(y, label);
+                int fx = ex == NONE ? 0 : graph.edgeFrequency(ex);
+                int fy = ey == NONE ? 0 : graph.edgeFrequency(ey);
+                if (differ(fx, nx, fy, ny, bound)) {
+                    return false;
+                }
+                if (ex != NONE && ey != NONE) {
+                    pending.add(graph.target(ex));
+                    pending.add(graph.target(ey));
+                }
+            }
+        }
+        return true;
+    }
+
+    // Hoeffding: f1/n1 and f2/n2 differ by more than chance allows
+    private static boolean differ(int f1, int n1, int f2, int n2, double bound) {
+        if (n1 == 0 || n2 == 0) {
+            return false;
+        }
+        double gap = Math.abs((double) f1 / n1 - (double) f2 / n2);
+        return gap > bound * (1 / Math.sqrt(n1) + 1 / Math.sqrt(n2));
+    }
+
+    private int current(int state) {
+        return mergedStates.find(state);
+    }
+
+    private void updateBasedOnMerges(Set<Integer> nodes) {
+        long startTime = timingUpdates ? System.nanoTime() : 0;
+        Set<Integer> nodesToRemove = new HashSet<>();
+        Set<Integer> nodesToAdd = new HashSet<>();
+        for (int n : nodes) {
+            int merged = current(n);
+            if (merged != n) {
                 nodesToRemove.add(n);
-                nodesToAdd.remove(n);
-                n = formerNodeToMergedNode.get(n);
-                nodesToAdd.add(n);
+                nodesToAdd.add(merged);
             }
         }
-        nodes.addAll(nodesToAdd);
         nodes.removeAll(nodesToRemove);
+        nodes.addAll(nodesToAdd);
+        if (timingUpdates) {
+            updateNanos += System.nanoTime() - startTime;
+        }
     }
-    
+
     private void mergeIntermediateStates() {
-        Map<Adjacency, Set<FSANode>> adjToNodes = new HashMap<>();
-        Set<FSANode> newCurMergeLevel = new HashSet<>();
-        Map<FSANode, FSANode> formerNodeToMergedNode = new HashMap<>();
-        for (FSANode node : curMergeLevel) {
-            boolean needToBreak = false;
-            for (Set<FSANode> targets : node.getLabelToTargets().values()) {
-                if (targets.size() > 1) {
-                    updateBasedOnMerges(targets, formerNodeToMergedNode);
-                    FSANode newNode = mergeNodes(targets);
-                    targets.stream().forEach(n -> formerNodeToMergedNode.put(n, newNode));                    
-                    if (newNode.needsToMergeOutgoingEdges()) {
-                        newCurMergeLevel.add(newNode);
+        BitSet newCurMergeLevel = new BitSet();
+        int first = firstOutConflict();
+        // level states ahead of the first nondeterministic one that share a
+        // (label, target) transition
+        List<Set<Integer>> sameAdjacency = sameAdjacency(first);
+        if (first == NONE && sameAdjacency.isEmpty() && graph.conflictedCount() > 0) {
+            // merges after incremental ingestion can leave a conflict whose
+            // states the level never reaches, e.g. a self-loop sharing its
+            // label with another source; restart the level from the graph's list
+            reseedLevel();
+            first = firstOutConflict();
+            sameAdjacency = sameAdjacency(first);
+        }
+
+        if (first != NONE) {
+            for (int label : nondeterministicLabels(first, true)) {
+                int[] targets = graph.targets(current(first), label);
+                if (targets.length > 1) {
+                    int newNode = mergeNodes(toSet(targets));
+                    if (graph.hasOutConflict(newNode)) {
+                        newCurMergeLevel.set(newNode);
                     }
-                    needToBreak = true;
-                }
-            }
-            
-            if (needToBreak) {
-                break;
-            }
-            
-            for (FSAEdge edge : node.getOutgoingEdges()) {
-                Adjacency adj = new Adjacency(edge);
-                Set<FSANode> nodesWithSameLabelToSameTarget = adjToNodes.get(adj);
-                if (nodesWithSameLabelToSameTarget == null) {
-                    nodesWithSameLabelToSameTarget = new HashSet<>();
-                    adjToNodes.put(adj, nodesWithSameLabelToSameTarget);
                 }
-                nodesWithSameLabelToSameTarget.add(node);
             }
         }
-        
-        for (FSANode node : curMergeLevel) {
-            newCurMergeLevel.addAll(node.getIncomingEdges().stream()
-                    .map(e -> e.getSource()).collect(Collectors.toSet()));
+
+        for (int node = curMergeLevel.nextSetBit(0); node >= 0; node = curMergeLevel.nextSetBit(node + 1)) {
+            for (int e = graph.firstIn(current(node)); e != NONE; e = graph.nextIn(e)) {
+                newCurMergeLevel.set(graph.source(e));
+            }
         }
-        
-       for (Set<FSANode> nodes : adjToNodes.values()) {
-           updateBasedOnMerges(nodes, formerNodeToMergedNode);
+
+        for (Set<Integer> nodes : sameAdjacency) {
+            updateBasedOnMerges(nodes);
             if (nodes.size() > 1) {
-                FSANode newNode = mergeNodes(nodes);
-                if (!Collections.disjoint(newCurMergeLevel, nodes)) {
-                    newCurMergeLevel.removeAll(nodes);
-                    newCurMergeLevel.add(newNode);
+                int newNode = mergeNodes(nodes);
+                boolean inNewLevel = false;
+                for (int node : nodes) {
+                    inNewLevel |= newCurMergeLevel.get(node);
+                    newCurMergeLevel.clear(node);
                 }
-                for (FSANode node : nodes) {
-                    formerNodeToMergedNode.put(node, newNode);
+                if (inNewLevel) {
+                    newCurMergeLevel.set(newNode);
                 }
             }
         }
         // remove any nodes that are now contained by other nodes
-        curMergeLevel = newCurMergeLevel.stream()
-                .filter(n -> this.nodes.contains(n))
-                .collect(Collectors.toSet());
-    }
-    
-    private FSANode mergeNodes(Set<FSANode> nodes) {
-        List<FSAEdge> incomingEdgesToAdjust = new ArrayList<>();
-        List<FSAEdge> outgoingEdgesToAdjust = new ArrayList<>();
-        List<String> ids = new ArrayList<>();
-        boolean replacedStart = false;
-        boolean replacedFinal = false;
-        boolean accepting = false;
-        for (FSANode node: nodes) {
-            incomingEdgesToAdjust.addAll(node.getIncomingEdges());
-            outgoingEdgesToAdjust.addAll(node.getOutgoingEdges());
-            ids.add(node.getID());
-            if (node == start) {
-                replacedStart = true;
-                start = null;
-            }
-            if (finalNodes.contains(node)) {
-                replacedFinal = true;
-            }
-            if (node.isAccepting()) {
-                accepting = true;
-            }
-            removeNode(node);
-        }
-        FSANode newNode = new FSANode(ids);
-        newNode.setAccepting(accepting);
-        Set<String> selfLoopLabels = new HashSet<>();
-        for (FSAEdge edge: outgoingEdgesToAdjust) {
-            FSANode formerSource = edge.getSource();
-            edge.setSource(newNode);
-            if (nodes.contains(edge.getTarget())) {
-                // self loop
-                if (!selfLoopLabels.contains(edge.getLabel())) {
-                    edge.setTarget(newNode);
-                    newNode.addEdge(edge);
-                    selfLoopLabels.add(edge.getLabel());
-                } else {
-                    edge.getTarget().removeEdge(edge);
+        BitSet live = new BitSet();
+        for (int node = newCurMergeLevel.nextSetBit(0); node >= 0; node = newCurMergeLevel.nextSetBit(node + 1)) {
+            if (graph.isLive(node)) {
+                live.set(node);
+            }
+        }
+        curMergeLevel = live;
+    }
+
+    // the graph tracks every nondeterministic state, so candidates come
+    // from that list instead of a scan over the whole level
+    private int firstOutConflict() {
+        int first = NONE;
+        for (int i = 0; i < graph.conflictedCount(); i++) {
+            int s = graph.conflictedState(i);
+            if (graph.hasOutConflict(s) && curMergeLevel.get(s) && (first == NONE || s < first)) {
+                first = s;
+            }
+        }
+        return first;
+    }
+
+    private void reseedLevel() {
+        for (int i = 0; i < graph.conflictedCount(); i++) {
+            int s = graph.conflictedState(i);
+            if (graph.hasOutConflict(s)) {
+                curMergeLevel.set(s);
+            }
+            if (graph.hasInConflict(s)) {
+                for (int label : nondeterministicLabels(s, false)) {
+                    for (int source : graph.sources(s, label)) {
+                        curMergeLevel.set(source);
+                    }
                 }
+            }
+        }
+    }
+
+    private List<Set<Integer>> sameAdjacency(int first) {
+        List<Set<Integer>> groups = new ArrayList<>();
+        for (int i = 0; i < graph.conflictedCount(); i++) {
+            int target = graph.conflictedState(i);
+            if (!graph.hasInConflict(target)) {
                 continue;
             }
-            if (!newNode.getOutgoingEdges().contains(edge)) {
-                newNode.addEdge(edge);
-                edge.getTarget().removeEdges(edge.getTarget().edgesFrom(formerSource));
-                if (!edge.getTarget().edgesFrom(newNode).contains(edge)) {
-                    edge.getTarget().addEdge(edge);
+            for (int label : nondeterministicLabels(target, false)) {
+                Set<Integer> nodes = new HashSet<>();
+                for (int source : graph.sources(target, label)) {
+                    if (curMergeLevel.get(source) && (first == NONE || source < first)) {
+                        nodes.add(source);
+                    }
                 }
-                List<FSAEdge> commonEdges = edge.getTarget().edgesFrom(newNode);
-                commonEdges.retainAll(newNode.edgesTo(edge.getTarget()));
-                assert commonEdges.size() > 0;
-                assert !edge.getTarget().hasEdgeFrom(formerSource);
-            } else {
-                FSANode target = edge.getTarget();
-                if (target.edgesFrom(newNode).stream().filter(e -> e.getLabel().equals(edge.getLabel()))
-                        .count() > 1) {
-                    target.removeEdge(edge);
+                if (nodes.size() > 1) {
+                    groups.add(nodes);
                 }
             }
-        }        
-        for (FSAEdge edge: incomingEdgesToAdjust) {
-            FSANode formerTarget = edge.getTarget();
-            edge.setTarget(newNode);
-            if (edge.getSource().equals(newNode) || nodes.contains(edge.getSource())) {
-                // self loop, handled as outgoing above
-                assert selfLoopLabels.contains(edge.getLabel());
+        }
+        return groups;
+    }
+
+    private int mergeNodes(Set<Integer> nodes) {
+        if (nodes.size() > 1) {
+            groupsMerged++;
+        }
+        int newNode = NONE;
+        for (int node : nodes) {
+            if (newNode == NONE) {
+                newNode = node;
                 continue;
             }
-
-            if (!newNode.getIncomingEdges().contains(edge)) {
-                newNode.addEdge(edge);
-                edge.getSource().removeEdges(edge.getSource().edgesTo(formerTarget));
-                if (!edge.getSource().edgesTo(newNode).contains(edge)) {
-                    edge.getSource().addEdge(edge);
-                }
-                List<FSAEdge> commonEdges = edge.getSource().edgesTo(newNode);
-                commonEdges.retainAll(newNode.edgesFrom(edge.getSource()));
-                assert commonEdges.size() > 0;
-                assert !edge.getSource().hasEdgeTo(formerTarget);
-            } else {
-                FSANode source = edge.getSource();
-                source.removeEdge(edge);
+            int root = mergedStates.union(newNode, node);
+            int absorbed = root == newNode ? node : newNode;
+            graph.absorb(root, absorbed);
+            if (graph.isAccepting(absorbed)) {
+                graph.setAccepting(root, true);
             }
+            graph.removeState(absorbed);
+            if (absorbed == start) {
+                start = root;
+            }
+            newNode = root;
         }
-        assert !this.nodes.contains(newNode);
-        this.nodes.add(newNode);
-        if (replacedStart) {
-            start = newNode;
-        }
-        if (replacedFinal) {
-            finalNodes.add(newNode);
+        if (nodes.size() > 1) {
+            // the survivor's name now lists the absorbed states too
+            graph.stateChanged(newNode);
         }
         return newNode;
     }
-    
+
     private void mergeFinalStates() {
-        Set<FSANode> formerFinals = new HashSet<>(finalNodes);
-        FSANode newNode = mergeNodes(formerFinals);
-        finalNodes.add(newNode);
-        newNode.getIncomingEdges().stream().forEach(e -> curMergeLevel.add(e.getSource()));
+        // the budget ends with merging, and the sketch with it
+        prunedCounts = null;
+        Set<Integer> formerFinals = new HashSet<>();
+        for (int s = 0; s < graph.stateCount(); s++) {
+            if (graph.isLive(s) && graph.isAccepting(s)) {
+                formerFinals.add(s);
+            }
+        }
+        if (formerFinals.isEmpty()) {
+            return;
+        }
+        int newNode = mergeNodes(formerFinals);
+        finalState = newNode;
+        for (int e = graph.firstIn(newNode); e != NONE; e = graph.nextIn(e)) {
+            curMergeLevel.set(graph.source(e));
+        }
     }
-    
+
+    private String stateName(int state) {
+        List<Integer> members = new ArrayList<>();
+        int member = state;
+        do {
+            members.add(member);
+            member = mergedStates.nextMember(member);
+        } while (member != state);
+        Collections.sort(members);
+        StringBuilder name = new StringBuilder();
+        for (int m : members) {
+            if (name.length() > 0) {
+                name.append(',');
+            }
+            name.append(m);
+        }
+        return name.toString();
+    }
+
+    private FSANode view(int state) {
+        return new FSANode(state, stateName(state), graph.isAccepting(state));
+    }
+
+    public int getStartState() {
+        return start;
+    }
+
+    /**
+     * Returns the state that {@code label}, a label id from
+     * {@link #getSymbolTable()}, leads to from {@code state}, or -1 if
+     * there is none. While the automaton is nondeterministic this is one
+     * of the targets.
+     */
+    public int getNextState(int state, int label) {
+        return graph.nextState(state, label);
+    }
+
+    /**
+     * Returns the label ids of the transitions from {@code source} to
+     * {@code target}, in the order {@link #getVisualGraph()} joins their
+     * names on the edge between the two.
+     */
+    public int[] getTransitionLabels(int source, int target) {
+        int count = 0;
+        for (int e = graph.firstOut(source); e != NONE; e = graph.nextOut(e)) {
+            if (graph.target(e) == target) {
+                count++;
+            }
+        }
+        // the visual graph prepends each label, so the list comes out reversed
+        int[] labels = new int[count];
+        for (int e = graph.firstOut(source); e != NONE; e = graph.nextOut(e)) {
+            if (graph.target(e) == target) {
+                labels[--count] = graph.label(e);
+            }
+        }
+        return labels;
+    }
+
+    /** Returns a view of {@code state} as it is now. */
+    public FSANode getNode(int state) {
+        return view(state);
+    }
+
     public DirectedSparseMultigraph<FSANode, FSAEdge> getVisualGraph() {
         DirectedSparseMultigraph<FSANode, FSAEdge> g = new DirectedSparseMultigraph<FSANode, FSAEdge>();
+        Map<Integer, FSANode> seenNodes = new HashMap<>();
+        // labels of the current node, grouped by target so that parallel
+        // transitions become one edge
+        Map<FSANode, StringBuilder> labelsByTarget = new LinkedHashMap<>();
         Queue<FSANode> q = new LinkedList<>();
-        q.add(start);
-        g.addVertex(start);
+        FSANode startNode = view(start);
+        seenNodes.put(start, startNode);
+        q.add(startNode);
+        g.addVertex(startNode);
         FSANode curNode;
         FSANode nextNode;
-        Set<FSANode> seenNodes = new HashSet<>();
-        seenNodes.add(start);
         while (!q.isEmpty()) {
             curNode = q.remove();
-            for (FSAEdge edge : curNode.getOutgoingEdges()) {
-                nextNode = edge.getTarget();
-                if (!seenNodes.contains(nextNode) && !nextNode.equals(curNode)) {
+            labelsByTarget.clear();
+            for (int e = graph.firstOut(curNode.getState()); e != NONE; e = graph.nextOut(e)) {
+                nextNode = seenNodes.get(graph.target(e));
+                if (nextNode == null) {
+                    nextNode = view(graph.target(e));
+                    seenNodes.put(graph.target(e), nextNode);
                     g.addVertex(nextNode);
                     q.add(nextNode);
-                    seenNodes.add(nextNode);
                 }
-                
-                FSAEdge existingEdge = g.findEdge(curNode, nextNode);
-                if (g.findEdge(curNode, nextNode) != null) {
-                    g.removeEdge(existingEdge);
-                    edge = edge.mergeLabel(existingEdge);
+                StringBuilder labels = labelsByTarget.get(nextNode);
+                if (labels == null) {
+                    labelsByTarget.put(nextNode, new StringBuilder(symbols.label(graph.label(e))));
+                } else {
+                    labels.insert(0, ", ").insert(0, symbols.label(graph.label(e)));
                 }
-                
-                g.addEdge(edge, curNode, nextNode);
+            }
+            for (Map.Entry<FSANode, StringBuilder> target : labelsByTarget.entrySet()) {
+                g.addEdge(new FSAEdge(curNode, target.getKey(), target.getValue().toString()), curNode,
+                        target.getKey());
             }
         }
         return g;
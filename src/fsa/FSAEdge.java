@@ -2,8 +2,8 @@ package fsa;
 
 public class FSAEdge {
     
-    private FSANode target;
-    private FSANode source;
+    private final FSANode target;
+    private final FSANode source;
     private final String label;
 
     public FSAEdge(FSANode source, FSANode target, String label) {
@@ -24,14 +24,6 @@ public class FSAEdge {
         return label;
     }
     
-    public void setTarget(FSANode node) {
-        this.target = node;
-    }
-    
-    public void setSource(FSANode node) {
-        this.source = node;
-    }
-    
     public boolean incidentTo(FSANode node) {
         return target.equals(node) || source.equals(node);
     }
@@ -0,0 +1,51 @@
+package fsa;
+
+import java.io.IOException;
+
+import edu.uci.ics.jung.graph.DirectedSparseMultigraph;
+
+/**
+ * Immutable view of an {@link FSA} at the moment {@link FSA#snapshot()} was
+ * called. It only offers queries, takes no locks and can be shared between
+ * any number of threads while the automaton it came from keeps changing.
+ */
+public final class FSASnapshot {
+
+    private final FSA fsa;
+
+    FSASnapshot(FSA fsa) {
+        this.fsa = fsa;
+    }
+
+    public int getStartState() {
+        return fsa.getStartState();
+    }
+
+    public int getStateCount() {
+        return fsa.getStateCount();
+    }
+
+    public int getTransitionCount() {
+        return fsa.getTransitionCount();
+    }
+
+    public boolean accepts(CharSequence sentence) {
+        return fsa.accepts(sentence);
+    }
+
+    public FSANode getNode(int state) {
+        return fsa.getNode(state);
+    }
+
+    public DirectedSparseMultigraph<FSANode, FSAEdge> getVisualGraph() {
+        return fsa.getVisualGraph();
+    }
+
+    public void writeDot(Appendable out) throws IOException {
+        fsa.writeDot(out);
+    }
+
+    public CompiledDFA compile() {
+        return fsa.compile();
+    }
+}
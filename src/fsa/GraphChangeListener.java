@@ -0,0 +1,37 @@
+package fsa;
+
+/**
+ * Receives every structural change of an {@link FSA} as it happens, on the
+ * thread making the change. States are identified by id, labels by their id
+ * in the automaton's symbol table. A merge shows up as the absorbed state's
+ * edges being moved or removed, the absorbed state being removed, and the
+ * surviving state being changed.
+ */
+public interface GraphChangeListener {
+
+    default void stateAdded(int state) {
+    }
+
+    default void stateRemoved(int state) {
+    }
+
+    /** The state's name or accepting flag changed. */
+    default void stateChanged(int state) {
+    }
+
+    default void edgeAdded(int source, int label, int target) {
+    }
+
+    default void edgeRemoved(int source, int label, int target) {
+    }
+
+    default void edgeMoved(int label, int oldSource, int oldTarget, int newSource, int newTarget) {
+    }
+
+    /**
+     * The automaton was rolled back to a checkpoint, replacing the whole
+     * graph at once; anything built from earlier events must be rebuilt.
+     */
+    default void graphRestored() {
+    }
+}
@@ -0,0 +1,133 @@
+package fsa;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable int array stored in fixed-size pages, either on the Java heap
+ * or in direct buffers outside it. {@link #snapshot()} hands out a
+ * read-only copy that shares every page; pages shared that way are copied
+ * the first time this column writes to them, so the copy never changes and
+ * snapshots cost one page table instead of the whole column.
+ */
+final class IntColumn {
+
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    // direct pages are larger, so huge columns need fewer buffer objects
+    private static final int DIRECT_PAGE_SHIFT = 16;
+    private static final int DIRECT_PAGE_SIZE = 1 << DIRECT_PAGE_SHIFT;
+    private static final int DIRECT_PAGE_MASK = DIRECT_PAGE_SIZE - 1;
+
+    // exactly one of these holds the pages
+    private int[][] pages;
+    private IntBuffer[] directPages;
+    // pages this column may write in place; the others are shared with a snapshot
+    private boolean[] owned;
+    private final int fill;
+
+    IntColumn(int fill, boolean offHeap) {
+        this.fill = fill;
+        owned = new boolean[] {true};
+        if (offHeap) {
+            directPages = new IntBuffer[] {newDirectPage()};
+        } else {
+            pages = new int[][] {newPage()};
+        }
+    }
+
+    private IntColumn(int fill, int[][] pages, IntBuffer[] directPages) {
+        this.fill = fill;
+        this.pages = pages;
+        this.directPages = directPages;
+        this.owned = new boolean[pages != null ? pages.length : directPages.length];
+    }
+
+    private int[] newPage() {
+        int[] page = new int[PAGE_SIZE];
+        if (fill != 0) {
+            Arrays.fill(page, fill);
+        }
+        return page;
+    }
+
+    private IntBuffer newDirectPage() {
+        IntBuffer page = ByteBuffer.allocateDirect(DIRECT_PAGE_SIZE * Integer.BYTES).order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        if (fill != 0) {
+            for (int i = 0; i < DIRECT_PAGE_SIZE; i++) {
+                page.put(i, fill);
+            }
+        }
+        return page;
+    }
+
+    int get(int index) {
+        if (pages != null) {
+            return pages[index >>> PAGE_SHIFT][index & PAGE_MASK];
+        }
+        return directPages[index >>> DIRECT_PAGE_SHIFT].get(index & DIRECT_PAGE_MASK);
+    }
+
+    void set(int index, int value) {
+        if (pages != null) {
+            int p = index >>> PAGE_SHIFT;
+            if (!owned[p]) {
+                pages[p] = pages[p].clone();
+                owned[p] = true;
+            }
+            pages[p][index & PAGE_MASK] = value;
+            return;
+        }
+        int p = index >>> DIRECT_PAGE_SHIFT;
+        if (!owned[p]) {
+            IntBuffer copy = ByteBuffer.allocateDirect(DIRECT_PAGE_SIZE * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            copy.put(0, directPages[p], 0, DIRECT_PAGE_SIZE);
+            directPages[p] = copy;
+            owned[p] = true;
+        }
+        directPages[p].put(index & DIRECT_PAGE_MASK, value);
+    }
+
+    void ensureCapacity(int capacity) {
+        int shift = pages != null ? PAGE_SHIFT : DIRECT_PAGE_SHIFT;
+        int needed = (int) (((long) capacity + (1 << shift) - 1) >>> shift);
+        int oldLength = owned.length;
+        if (needed <= oldLength) {
+            return;
+        }
+        int newLength = Math.max(needed, oldLength + (oldLength >> 1));
+        owned = Arrays.copyOf(owned, newLength);
+        Arrays.fill(owned, oldLength, newLength, true);
+        if (pages != null) {
+            pages = Arrays.copyOf(pages, newLength);
+            for (int p = oldLength; p < newLength; p++) {
+                pages[p] = newPage();
+            }
+        } else {
+            directPages = Arrays.copyOf(directPages, newLength);
+            for (int p = oldLength; p < newLength; p++) {
+                directPages[p] = newDirectPage();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the current contents that shares this column's
+     * pages. The copy must only be read; later writes to this column copy
+     * the affected pages first and so never show through.
+     */
+    IntColumn snapshot() {
+        Arrays.fill(owned, false);
+        return new IntColumn(fill, pages != null ? pages.clone() : null,
+                directPages != null ? directPages.clone() : null);
+    }
+
+    long bytes() {
+        return pages != null ? 4L * PAGE_SIZE * pages.length : 4L * DIRECT_PAGE_SIZE * directPages.length;
+    }
+}
@@ -0,0 +1,46 @@
+package fsa;
+
+import java.util.Arrays;
+
+final class IntQueue {
+
+    private int[] elements = new int[16];
+    private int head;
+    private int size;
+
+    void add(int element) {
+        if (size == elements.length) {
+            int[] grown = Arrays.copyOf(elements, 2 * elements.length);
+            // unwrap the ring so it starts at index 0 again
+            System.arraycopy(elements, 0, grown, elements.length, head);
+            System.arraycopy(grown, head, grown, 0, size);
+            elements = grown;
+            head = 0;
+        }
+        elements[(head + size) % elements.length] = element;
+        size++;
+    }
+
+    int poll() {
+        int element = elements[head];
+        head = (head + 1) % elements.length;
+        size--;
+        return element;
+    }
+
+    IntQueue copy() {
+        IntQueue copy = new IntQueue();
+        copy.elements = elements.clone();
+        copy.head = head;
+        copy.size = size;
+        return copy;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,33 @@
+package fsa;
+
+public class LearningSummary {
+
+    private final int groupMerges;
+    private final int statesCollapsed;
+    private final long wallTimeNanos;
+
+    public LearningSummary(int groupMerges, int statesCollapsed, long wallTimeNanos) {
+        this.groupMerges = groupMerges;
+        this.statesCollapsed = statesCollapsed;
+        this.wallTimeNanos = wallTimeNanos;
+    }
+
+    /** Number of groups of states that were merged into one state each. */
+    public int getGroupMerges() {
+        return groupMerges;
+    }
+
+    public int getStatesCollapsed() {
+        return statesCollapsed;
+    }
+
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "LearningSummary [groupMerges=" + groupMerges + ", statesCollapsed=" + statesCollapsed
+                + ", wallTimeMillis=" + wallTimeNanos / 1_000_000 + "]";
+    }
+}
@@ -0,0 +1,55 @@
+package fsa;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("fsa.MergeLevel")
+@Label("Merge Level")
+@Category("ZR Learning")
+@Description("One merge step of an FSA")
+final class MergeLevelEvent extends Event {
+
+    @Label("Level")
+    int level;
+
+    @Label("Level Size")
+    int levelSize;
+
+    @Label("Groups Merged")
+    int groupsMerged;
+
+    @Label("Edges Rewired")
+    long edgesRewired;
+
+    @Label("Self Loops Created")
+    long selfLoopsCreated;
+
+    @Label("Duplicates Dropped")
+    long duplicatesDropped;
+
+    @Label("Update Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long updateNanos;
+
+    @Label("Live States")
+    int liveStates;
+
+    @Label("Live Edges")
+    int liveEdges;
+
+    void set(MergeLevelStats stats) {
+        level = stats.getLevel();
+        levelSize = stats.getLevelSize();
+        groupsMerged = stats.getGroupsMerged();
+        edgesRewired = stats.getEdgesRewired();
+        selfLoopsCreated = stats.getSelfLoopsCreated();
+        duplicatesDropped = stats.getDuplicatesDropped();
+        updateNanos = stats.getUpdateNanos();
+        liveStates = stats.getLiveStates();
+        liveEdges = stats.getLiveEdges();
+    }
+}
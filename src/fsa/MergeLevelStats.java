@@ -0,0 +1,81 @@
+package fsa;
+
+public class MergeLevelStats {
+
+    private final int level;
+    private final int levelSize;
+    private final int groupsMerged;
+    private final long edgesRewired;
+    private final long selfLoopsCreated;
+    private final long duplicatesDropped;
+    private final long updateNanos;
+    private final int liveStates;
+    private final int liveEdges;
+    private final long wallTimeNanos;
+
+    public MergeLevelStats(int level, int levelSize, int groupsMerged, long edgesRewired, long selfLoopsCreated,
+            long duplicatesDropped, long updateNanos, int liveStates, int liveEdges, long wallTimeNanos) {
+        this.level = level;
+        this.levelSize = levelSize;
+        this.groupsMerged = groupsMerged;
+        this.edgesRewired = edgesRewired;
+        this.selfLoopsCreated = selfLoopsCreated;
+        this.duplicatesDropped = duplicatesDropped;
+        this.updateNanos = updateNanos;
+        this.liveStates = liveStates;
+        this.liveEdges = liveEdges;
+        this.wallTimeNanos = wallTimeNanos;
+    }
+
+    /** Number of merge steps run before this one. */
+    public int getLevel() {
+        return level;
+    }
+
+    /** Size of the merge level the step started from. */
+    public int getLevelSize() {
+        return levelSize;
+    }
+
+    public int getGroupsMerged() {
+        return groupsMerged;
+    }
+
+    public long getEdgesRewired() {
+        return edgesRewired;
+    }
+
+    public long getSelfLoopsCreated() {
+        return selfLoopsCreated;
+    }
+
+    public long getDuplicatesDropped() {
+        return duplicatesDropped;
+    }
+
+    /** Time spent mapping merged states to their representatives. */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+
+    public int getLiveStates() {
+        return liveStates;
+    }
+
+    public int getLiveEdges() {
+        return liveEdges;
+    }
+
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "MergeLevelStats [level=" + level + ", levelSize=" + levelSize + ", groupsMerged=" + groupsMerged
+                + ", edgesRewired=" + edgesRewired + ", selfLoopsCreated=" + selfLoopsCreated
+                + ", duplicatesDropped=" + duplicatesDropped + ", updateMicros=" + updateNanos / 1_000
+                + ", liveStates=" + liveStates + ", liveEdges=" + liveEdges
+                + ", wallTimeMillis=" + wallTimeNanos / 1_000_000 + "]";
+    }
+}
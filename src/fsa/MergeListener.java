@@ -0,0 +1,8 @@
+package fsa;
+
+/** Receives the counters of every merge level once the level is done. */
+@FunctionalInterface
+public interface MergeListener {
+
+    void levelMerged(MergeLevelStats stats);
+}
@@ -0,0 +1,46 @@
+package fsa;
+
+public class MinimizationSummary {
+
+    private final int statesBefore;
+    private final int transitionsBefore;
+    private final int statesAfter;
+    private final int transitionsAfter;
+    private final long wallTimeNanos;
+
+    public MinimizationSummary(int statesBefore, int transitionsBefore, int statesAfter, int transitionsAfter,
+            long wallTimeNanos) {
+        this.statesBefore = statesBefore;
+        this.transitionsBefore = transitionsBefore;
+        this.statesAfter = statesAfter;
+        this.transitionsAfter = transitionsAfter;
+        this.wallTimeNanos = wallTimeNanos;
+    }
+
+    public int getStatesBefore() {
+        return statesBefore;
+    }
+
+    public int getTransitionsBefore() {
+        return transitionsBefore;
+    }
+
+    public int getStatesAfter() {
+        return statesAfter;
+    }
+
+    public int getTransitionsAfter() {
+        return transitionsAfter;
+    }
+
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "MinimizationSummary [states=" + statesBefore + "->" + statesAfter + ", transitions="
+                + transitionsBefore + "->" + transitionsAfter + ", wallTimeMillis=" + wallTimeNanos / 1_000_000
+                + "]";
+    }
+}
@@ -0,0 +1,246 @@
+package fsa;
+
+import java.util.Arrays;
+
+/**
+ * Partition refinement for partial DFAs, in the formulation of Valmari and
+ * Lehtinen: Hopcroft's "process the smaller half" splitting over blocks of
+ * states, with the transitions kept in a second partition of label cords so
+ * missing transitions never have to be filled in. Runs in O(m log n).
+ */
+final class Minimizer {
+
+    private Minimizer() {
+    }
+
+    /**
+     * Returns the block of every state in the coarsest partition that
+     * respects acceptance and transitions, numbered from 0, or NONE for
+     * states that are unreachable from {@code start} or cannot reach an
+     * accepting state. Transition i goes from {@code tails[i]} on
+     * {@code labels[i]} to {@code heads[i]} and no (tail, label) pair may
+     * repeat.
+     */
+    static int[] blocks(int stateCount, int[] tails, int[] labels, int[] heads, boolean[] accepting, int start) {
+        int[] block = new int[stateCount];
+        Arrays.fill(block, TransitionGraph.NONE);
+        boolean[] useful = useful(stateCount, tails, heads, accepting, start);
+
+        // renumber the useful states and keep the transitions between them
+        int[] ids = new int[stateCount];
+        int[] states = new int[stateCount];
+        int n = 0;
+        for (int s = 0; s < stateCount; s++) {
+            if (useful[s]) {
+                ids[s] = n;
+                states[n++] = s;
+            }
+        }
+        int m = 0;
+        long[] byLabel = new long[tails.length];
+        for (int t = 0; t < tails.length; t++) {
+            if (useful[tails[t]] && useful[heads[t]]) {
+                byLabel[m++] = ((long) labels[t] << 32) | t;
+            }
+        }
+        byLabel = Arrays.copyOf(byLabel, m);
+        Arrays.sort(byLabel);
+        int[] tail = new int[m];
+        int[] head = new int[m];
+        int[] cord = new int[m];
+        for (int i = 0; i < m; i++) {
+            int t = (int) byLabel[i];
+            tail[i] = ids[tails[t]];
+            head[i] = ids[heads[t]];
+            cord[i] = (int) (byLabel[i] >>> 32);
+        }
+        if (n == 0) {
+            return block;
+        }
+
+        Partition blocks = new Partition(n, null);
+        for (int s = 0; s < n; s++) {
+            if (accepting[states[s]]) {
+                blocks.mark(s);
+            }
+        }
+        blocks.split();
+        Partition cords = new Partition(m, cord);
+
+        // incoming transitions of every state
+        int[] inStart = new int[n + 1];
+        for (int i = 0; i < m; i++) {
+            inStart[head[i] + 1]++;
+        }
+        for (int s = 0; s < n; s++) {
+            inStart[s + 1] += inStart[s];
+        }
+        int[] incoming = new int[m];
+        int[] fill = Arrays.copyOf(inStart, n);
+        for (int i = 0; i < m; i++) {
+            incoming[fill[head[i]]++] = i;
+        }
+
+        int b = 1;
+        for (int c = 0; c < cords.sets; c++) {
+            for (int i = cords.first[c]; i < cords.past[c]; i++) {
+                blocks.mark(tail[cords.elements[i]]);
+            }
+            blocks.split();
+            for (; b < blocks.sets; b++) {
+                for (int i = blocks.first[b]; i < blocks.past[b]; i++) {
+                    int s = blocks.elements[i];
+                    for (int j = inStart[s]; j < inStart[s + 1]; j++) {
+                        cords.mark(incoming[j]);
+                    }
+                }
+                cords.split();
+            }
+        }
+        for (int s = 0; s < n; s++) {
+            block[states[s]] = blocks.setOf[s];
+        }
+        return block;
+    }
+
+    // reachable from start and co-reachable from an accepting state
+    private static boolean[] useful(int stateCount, int[] tails, int[] heads, boolean[] accepting, int start) {
+        boolean[] forward = new boolean[stateCount];
+        boolean[] backward = new boolean[stateCount];
+        int[] outStart = adjacency(stateCount, tails);
+        int[] outEdges = edges(outStart, tails);
+        int[] inStart = adjacency(stateCount, heads);
+        int[] inEdges = edges(inStart, heads);
+        IntQueue queue = new IntQueue();
+        forward[start] = true;
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int j = outStart[s]; j < outStart[s + 1]; j++) {
+                int next = heads[outEdges[j]];
+                if (!forward[next]) {
+                    forward[next] = true;
+                    queue.add(next);
+                }
+            }
+        }
+        for (int s = 0; s < stateCount; s++) {
+            if (accepting[s] && forward[s]) {
+                backward[s] = true;
+                queue.add(s);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int j = inStart[s]; j < inStart[s + 1]; j++) {
+                int previous = tails[inEdges[j]];
+                if (forward[previous] && !backward[previous]) {
+                    backward[previous] = true;
+                    queue.add(previous);
+                }
+            }
+        }
+        return backward;
+    }
+
+    private static int[] adjacency(int stateCount, int[] endpoint) {
+        int[] start = new int[stateCount + 1];
+        for (int s : endpoint) {
+            start[s + 1]++;
+        }
+        for (int s = 0; s < stateCount; s++) {
+            start[s + 1] += start[s];
+        }
+        return start;
+    }
+
+    private static int[] edges(int[] start, int[] endpoint) {
+        int[] edges = new int[endpoint.length];
+        int[] fill = Arrays.copyOf(start, start.length - 1);
+        for (int t = 0; t < endpoint.length; t++) {
+            edges[fill[endpoint[t]]++] = t;
+        }
+        return edges;
+    }
+
+    /**
+     * Refinable partition of 0..n-1. Each set is a range of
+     * {@code elements}; marked elements are moved to the front of their
+     * range, and split() carves the smaller of the marked and unmarked parts
+     * of every touched set off into a new set.
+     */
+    private static final class Partition {
+        int sets;
+        final int[] elements;
+        final int[] location;
+        final int[] setOf;
+        final int[] first;
+        final int[] past;
+        final int[] marked;
+        final int[] touched;
+        int touchedCount;
+
+        // one set per distinct key, or a single set when keys is null; keys
+        // must be sorted
+        Partition(int n, int[] keys) {
+            elements = new int[n];
+            location = new int[n];
+            setOf = new int[n];
+            first = new int[n + 1];
+            past = new int[n + 1];
+            marked = new int[n + 1];
+            touched = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                elements[i] = i;
+                location[i] = i;
+                if (keys != null && i > 0 && keys[i] != keys[i - 1]) {
+                    past[sets++] = i;
+                    first[sets] = i;
+                }
+                setOf[i] = sets;
+            }
+            if (n > 0) {
+                past[sets++] = n;
+            }
+        }
+
+        void mark(int e) {
+            int s = setOf[e];
+            int i = location[e];
+            int j = first[s] + marked[s];
+            elements[i] = elements[j];
+            location[elements[i]] = i;
+            elements[j] = e;
+            location[e] = j;
+            if (marked[s]++ == 0) {
+                touched[touchedCount++] = s;
+            }
+        }
+
+        void split() {
+            while (touchedCount > 0) {
+                int s = touched[--touchedCount];
+                int j = first[s] + marked[s];
+                if (j == past[s]) {
+                    marked[s] = 0;
+                    continue;
+                }
+                int z = sets++;
+                if (marked[s] <= past[s] - j) {
+                    first[z] = first[s];
+                    past[z] = j;
+                    first[s] = j;
+                } else {
+                    past[z] = past[s];
+                    first[z] = j;
+                    past[s] = j;
+                }
+                for (int i = first[z]; i < past[z]; i++) {
+                    setOf[elements[i]] = z;
+                }
+                marked[s] = 0;
+                marked[z] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package fsa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a {@link CompiledDFA}. All values are big-endian:
+ *
+ * <pre>
+ * header       int magic "ZRFA", int version, int stateCount,
+ *              int transitionCount, int labelCount, int start,
+ *              int labelBytes, int bodyChecksum, int headerChecksum,
+ *              int reserved
+ * accepting    long[(stateCount + 63) / 64]  bit set of accepting states
+ * offsets      int[stateCount + 1]   first transition of each state
+ * labels       int[transitionCount]  sorted by label within each state
+ * targets      int[transitionCount]
+ * labelEnds    int[labelCount]       end of each label in labelData
+ * labelData    byte[labelBytes]      UTF-8 labels in id order
+ * </pre>
+ *
+ * Every section is mapped on its own, so loading does not copy the states
+ * or transitions. The checksums are CRC-32s, of everything after the
+ * header and of the header up to the header checksum. Loading checks the
+ * header checksum and the section sizes, which costs the same however
+ * large the automaton is; only a verified load reads the whole file to
+ * check the body checksum and every transition.
+ */
+final class Snapshot {
+
+    static final int MAGIC = 0x5a524641;
+    static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 10 * Integer.BYTES;
+    // the header checksum covers the ints before it
+    private static final int CHECKED_HEADER_BYTES = 8 * Integer.BYTES;
+    private static final int CHUNK = 1 << 20;
+
+    private Snapshot() {
+    }
+
+    static void write(CompiledDFA dfa, Path file) throws IOException {
+        SymbolTable symbols = dfa.getSymbolTable();
+        byte[][] encoded = new byte[symbols.size()][];
+        int labelBytes = 0;
+        for (int l = 0; l < encoded.length; l++) {
+            encoded[l] = symbols.label(l).getBytes(StandardCharsets.UTF_8);
+            labelBytes += encoded[l].length;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // the body goes first, so the header can carry its checksum
+            channel.position(HEADER_BYTES);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK);
+            CRC32 body = new CRC32();
+            LongBuffer accepting = dfa.accepting();
+            while (accepting.hasRemaining()) {
+                room(channel, buffer, body, Long.BYTES);
+                buffer.putLong(accepting.get());
+            }
+            for (IntBuffer section : new IntBuffer[] {dfa.offsets(), dfa.labels(), dfa.targets()}) {
+                while (section.hasRemaining()) {
+                    room(channel, buffer, body, Integer.BYTES);
+                    buffer.putInt(section.get());
+                }
+            }
+            int end = 0;
+            for (byte[] label : encoded) {
+                end += label.length;
+                room(channel, buffer, body, Integer.BYTES);
+                buffer.putInt(end);
+            }
+            for (byte[] label : encoded) {
+                for (byte b : label) {
+                    room(channel, buffer, body, 1);
+                    buffer.put(b);
+                }
+            }
+            drain(channel, buffer, body);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dfa.getStateCount()).putInt(dfa.getTransitionCount())
+                    .putInt(encoded.length).putInt(dfa.getStartState()).putInt(labelBytes)
+                    .putInt((int) body.getValue());
+            header.putInt(headerChecksum(header)).putInt(0);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    private static void room(FileChannel channel, ByteBuffer buffer, CRC32 checksum, int bytes)
+            throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer, checksum);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer, CRC32 checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static int headerChecksum(ByteBuffer header) {
+        CRC32 checksum = new CRC32();
+        checksum.update(header.duplicate().position(0).limit(CHECKED_HEADER_BYTES));
+        return (int) checksum.getValue();
+    }
+
+    static CompiledDFA load(Path file, boolean verify) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(file + " is not an automaton snapshot");
+            }
+            MappedByteBuffer headerBytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            IntBuffer header = headerBytes.asIntBuffer();
+            if (header.get(0) != MAGIC) {
+                throw new IOException(file + " is not an automaton snapshot");
+            }
+            if (header.get(1) != VERSION) {
+                throw new IOException("unsupported snapshot version " + header.get(1) + " in " + file);
+            }
+            if (header.get(8) != headerChecksum(headerBytes)) {
+                throw new IOException("corrupt snapshot " + file + ": header checksum mismatch");
+            }
+            int stateCount = header.get(2);
+            int transitionCount = header.get(3);
+            int labelCount = header.get(4);
+            int start = header.get(5);
+            int labelBytes = header.get(6);
+            if (stateCount < 1 || transitionCount < 0 || labelCount < 0 || labelBytes < 0) {
+                throw new IOException("corrupt snapshot " + file + ": negative section size or no states");
+            }
+            if (start < 0 || start >= stateCount) {
+                throw new IOException("corrupt snapshot " + file + ": start state " + start + " out of "
+                        + stateCount + " states");
+            }
+
+            long position = HEADER_BYTES;
+            long acceptingBytes = (long) (stateCount + 63) / 64 * Long.BYTES;
+            long offsetBytes = (long) (stateCount + 1) * Integer.BYTES;
+            long transitionBytes = (long) transitionCount * Integer.BYTES;
+            long labelEndBytes = (long) labelCount * Integer.BYTES;
+            long expected = position + acceptingBytes + offsetBytes + 2 * transitionBytes + labelEndBytes
+                    + labelBytes;
+            if (channel.size() != expected) {
+                throw new IOException("truncated or corrupt snapshot " + file + ": expected " + expected
+                        + " bytes, found " + channel.size());
+            }
+            LongBuffer accepting = map(channel, position, acceptingBytes).asLongBuffer();
+            position += acceptingBytes;
+            IntBuffer offsets = map(channel, position, offsetBytes).asIntBuffer();
+            position += offsetBytes;
+            IntBuffer labels = map(channel, position, transitionBytes).asIntBuffer();
+            position += transitionBytes;
+            IntBuffer targets = map(channel, position, transitionBytes).asIntBuffer();
+            position += transitionBytes;
+            IntBuffer labelEnds = map(channel, position, labelEndBytes).asIntBuffer();
+            position += labelEndBytes;
+            MappedByteBuffer labelData = map(channel, position, labelBytes);
+            if (verify) {
+                if (header.get(7) != bodyChecksum(channel)) {
+                    throw new IOException("corrupt snapshot " + file + ": body checksum mismatch");
+                }
+                checkTransitions(file, stateCount, labelCount, offsets, labels, targets);
+            }
+
+            SymbolTable symbols = new SymbolTable();
+            int labelStart = 0;
+            for (int l = 0; l < labelCount; l++) {
+                int labelEnd = labelEnds.get(l);
+                if (labelEnd < labelStart || labelEnd > labelBytes) {
+                    throw new IOException("corrupt snapshot " + file + ": label " + l + " ends at " + labelEnd
+                            + ", outside " + labelStart + ".." + labelBytes);
+                }
+                if (symbols.intern(labelData, labelStart, labelEnd) != l) {
+                    throw new IOException("duplicate label with id " + l + " in " + file);
+                }
+                labelStart = labelEnd;
+            }
+            return new CompiledDFA(symbols, start, offsets, labels, targets, accepting, false);
+        }
+    }
+
+    private static int bodyChecksum(FileChannel channel) throws IOException {
+        CRC32 checksum = new CRC32();
+        for (long position = HEADER_BYTES; position < channel.size(); position += CHUNK) {
+            checksum.update(map(channel, position, Math.min(CHUNK, channel.size() - position)));
+        }
+        return (int) checksum.getValue();
+    }
+
+    // what an unverified load leaves to the buffers' bounds checks
+    private static void checkTransitions(Path file, int stateCount, int labelCount, IntBuffer offsets,
+            IntBuffer labels, IntBuffer targets) throws IOException {
+        if (offsets.get(0) != 0) {
+            throw new IOException("corrupt snapshot " + file + ": first offset is " + offsets.get(0) + ", not 0");
+        }
+        for (int s = 0; s < stateCount; s++) {
+            int from = offsets.get(s);
+            int to = offsets.get(s + 1);
+            if (to < from || to > labels.limit()) {
+                throw new IOException("corrupt snapshot " + file + ": offsets of state " + s + " run from " + from
+                        + " to " + to + ", outside 0.." + labels.limit());
+            }
+            int previous = -1;
+            for (int i = from; i < to; i++) {
+                int label = labels.get(i);
+                if (label <= previous || label >= labelCount) {
+                    throw new IOException("corrupt snapshot " + file + ": label " + label + " of state " + s
+                            + " is out of order or outside 0.." + (labelCount - 1));
+                }
+                previous = label;
+                int target = targets.get(i);
+                if (target < 0 || target >= stateCount) {
+                    throw new IOException("corrupt snapshot " + file + ": state " + s + " has a transition to "
+                            + target + " out of " + stateCount + " states");
+                }
+            }
+        }
+        if (offsets.get(stateCount) != labels.limit()) {
+            throw new IOException("corrupt snapshot " + file + ": last offset is " + offsets.get(stateCount)
+                    + ", not the transition count " + labels.limit());
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("snapshot section of " + size + " bytes is too large to map");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+}
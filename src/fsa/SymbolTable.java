@@ -0,0 +1,288 @@
+package fsa;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns transition labels as dense int ids. Labels can be looked up from a
+ * String, a region of any CharSequence, or a UTF-8 encoded region of a
+ * ByteBuffer; only a label seen for the first time allocates a String.
+ */
+public class SymbolTable {
+
+    public static final int UNKNOWN = -1;
+
+    private static final int EMPTY = -1;
+    private static final long MALFORMED = -1;
+
+    private String[] labels = new String[16];
+    private int[] hashes = new int[16];
+    private int size;
+    private int[] slots;
+
+    public SymbolTable() {
+        slots = new int[32];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    SymbolTable(SymbolTable other) {
+        labels = Arrays.copyOf(other.labels, other.labels.length);
+        hashes = Arrays.copyOf(other.hashes, other.hashes.length);
+        size = other.size;
+        slots = Arrays.copyOf(other.slots, other.slots.length);
+    }
+
+    public int intern(String label) {
+        return intern(label, 0, label.length());
+    }
+
+    public int lookup(String label) {
+        return lookup(label, 0, label.length());
+    }
+
+    public int intern(CharSequence chars, int start, int end) {
+        int hash = hash(chars, start, end);
+        int slot = probe(hash, chars, start, end);
+        if (slots[slot] != EMPTY) {
+            return slots[slot];
+        }
+        return add(slot, hash, chars.subSequence(start, end).toString());
+    }
+
+    public int lookup(CharSequence chars, int start, int end) {
+        int slot = probe(hash(chars, start, end), chars, start, end);
+        return slots[slot] == EMPTY ? UNKNOWN : slots[slot];
+    }
+
+    /** Interns the UTF-8 encoded label in {@code utf8[start, end)}. */
+    public int intern(ByteBuffer utf8, int start, int end) {
+        long hash = hashUtf8(utf8, start, end);
+        if (hash == MALFORMED) {
+            return intern(decode(utf8, start, end));
+        }
+        int slot = probeUtf8((int) hash, utf8, start, end);
+        if (slots[slot] != EMPTY) {
+            return slots[slot];
+        }
+        return add(slot, (int) hash, decode(utf8, start, end));
+    }
+
+    public int lookup(ByteBuffer utf8, int start, int end) {
+        long hash = hashUtf8(utf8, start, end);
+        if (hash == MALFORMED) {
+            return lookup(decode(utf8, start, end));
+        }
+        int slot = probeUtf8((int) hash, utf8, start, end);
+        return slots[slot] == EMPTY ? UNKNOWN : slots[slot];
+    }
+
+    /**
+     * Interns every token of {@code sentence}, split on single spaces the
+     * same way as {@link FSA#ingestSentence(CharSequence)}.
+     */
+    public int[] internAll(CharSequence sentence) {
+        int end = sentence.length();
+        while (end > 0 && sentence.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (end == 0 && sentence.length() > 0) {
+            return new int[0];
+        }
+        int count = 1;
+        for (int i = 0; i < end; i++) {
+            if (sentence.charAt(i) == ' ') {
+                count++;
+            }
+        }
+        int[] tokens = new int[count];
+        int n = 0;
+        int tokenStart = 0;
+        for (int i = 0; i <= end; i++) {
+            if (i == end || sentence.charAt(i) == ' ') {
+                tokens[n++] = intern(sentence, tokenStart, i);
+                tokenStart = i + 1;
+            }
+        }
+        return tokens;
+    }
+
+    public String label(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("no label with id " + id);
+        }
+        return labels[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(int slot, int hash, String label) {
+        if (size == labels.length) {
+            labels = Arrays.copyOf(labels, 2 * size);
+            hashes = Arrays.copyOf(hashes, 2 * size);
+        }
+        int id = size++;
+        labels[id] = label;
+        hashes[id] = hash;
+        slots[slot] = id;
+        if (2 * size > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[2 * slots.length];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(hashes[id]) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        return hash;
+    }
+
+    private int probe(int hash, CharSequence chars, int start, int end) {
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        int id;
+        while ((id = slots[slot]) != EMPTY) {
+            if (hashes[id] == hash && matches(labels[id], chars, start, end)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static boolean matches(String label, CharSequence chars, int start, int end) {
+        if (label.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < label.length(); i++) {
+            if (label.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // String.hashCode() of the decoded label, or MALFORMED
+    private static long hashUtf8(ByteBuffer utf8, int start, int end) {
+        int hash = 0;
+        int i = start;
+        while (i < end) {
+            long decoded = decodeCodePoint(utf8, i, end);
+            if (decoded == MALFORMED) {
+                return MALFORMED;
+            }
+            int codePoint = (int) decoded;
+            if (Character.isBmpCodePoint(codePoint)) {
+                hash = 31 * hash + codePoint;
+            } else {
+                hash = 31 * hash + Character.highSurrogate(codePoint);
+                hash = 31 * hash + Character.lowSurrogate(codePoint);
+            }
+            i += (int) (decoded >>> 32);
+        }
+        return hash & 0xffffffffL;
+    }
+
+    private int probeUtf8(int hash, ByteBuffer utf8, int start, int end) {
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        int id;
+        while ((id = slots[slot]) != EMPTY) {
+            if (hashes[id] == hash && matchesUtf8(labels[id], utf8, start, end)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static boolean matchesUtf8(String label, ByteBuffer utf8, int start, int end) {
+        int k = 0;
+        int i = start;
+        while (i < end) {
+            long decoded = decodeCodePoint(utf8, i, end);
+            int codePoint = (int) decoded;
+            if (Character.isBmpCodePoint(codePoint)) {
+                if (k >= label.length() || label.charAt(k++) != codePoint) {
+                    return false;
+                }
+            } else {
+                if (k + 1 >= label.length() || label.charAt(k++) != Character.highSurrogate(codePoint)
+                        || label.charAt(k++) != Character.lowSurrogate(codePoint)) {
+                    return false;
+                }
+            }
+            i += (int) (decoded >>> 32);
+        }
+        return k == label.length();
+    }
+
+    // (byte length << 32) | code point of the sequence at i, or MALFORMED
+    private static long decodeCodePoint(ByteBuffer utf8, int i, int end) {
+        int b = utf8.get(i);
+        if (b >= 0) {
+            return (1L << 32) | b;
+        }
+        int length;
+        int codePoint;
+        int min;
+        if ((b & 0xe0) == 0xc0) {
+            length = 2;
+            codePoint = b & 0x1f;
+            min = 0x80;
+        } else if ((b & 0xf0) == 0xe0) {
+            length = 3;
+            codePoint = b & 0x0f;
+            min = 0x800;
+        } else if ((b & 0xf8) == 0xf0) {
+            length = 4;
+            codePoint = b & 0x07;
+            min = 0x10000;
+        } else {
+            return MALFORMED;
+        }
+        if (i + length > end) {
+            return MALFORMED;
+        }
+        for (int k = 1; k < length; k++) {
+            int c = utf8.get(i + k);
+            if ((c & 0xc0) != 0x80) {
+                return MALFORMED;
+            }
+            codePoint = (codePoint << 6) | (c & 0x3f);
+        }
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return MALFORMED;
+        }
+        return ((long) length << 32) | codePoint;
+    }
+
+    private static String decode(ByteBuffer utf8, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        utf8.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
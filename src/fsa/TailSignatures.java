@@ -0,0 +1,107 @@
+package fsa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Groups states by what can happen within k steps of them, for k-tails
+ * style merging. Round j gives every live state the class of its
+ * signature: its class from round j - 1 together with the sorted set of
+ * (label, class of neighbour) pairs over its outgoing edges, or over its
+ * incoming edges for the past. States are bucketed by the signature's hash
+ * and only hash collisions are compared in full, so each round is linear
+ * in the number of edges apart from sorting each state's own pairs.
+ */
+final class TailSignatures {
+
+    private TailSignatures() {
+    }
+
+    /**
+     * Returns the class of every state after {@code k} rounds, or NONE for
+     * states that are not live. With {@code past} false, round 0 separates
+     * accepting states, so states share a class when their paths of up to
+     * k labels agree, including where those paths may stop; with
+     * {@code past} true, round 0 separates the start state and the same
+     * holds for the paths of up to k labels leading into them. Stops early
+     * once a round splits no class.
+     */
+    static int[] classes(TransitionGraph graph, int start, int k, boolean past) {
+        int stateCount = graph.stateCount();
+        int[] classes = new int[stateCount];
+        boolean[] used = new boolean[2];
+        for (int s = 0; s < stateCount; s++) {
+            if (!graph.isLive(s)) {
+                classes[s] = TransitionGraph.NONE;
+                continue;
+            }
+            classes[s] = (past ? s == start : graph.isAccepting(s)) ? 1 : 0;
+            used[classes[s]] = true;
+        }
+        int classCount = (used[0] ? 1 : 0) + (used[1] ? 1 : 0);
+        long[] pairs = new long[16];
+        for (int round = 0; round < k; round++) {
+            Map<Signature, Integer> ids = new HashMap<>();
+            int[] next = new int[stateCount];
+            for (int s = 0; s < stateCount; s++) {
+                if (classes[s] == TransitionGraph.NONE) {
+                    next[s] = TransitionGraph.NONE;
+                    continue;
+                }
+                int n = 0;
+                int e = past ? graph.firstIn(s) : graph.firstOut(s);
+                while (e != TransitionGraph.NONE) {
+                    if (n == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, 2 * n);
+                    }
+                    int neighbour = past ? graph.source(e) : graph.target(e);
+                    pairs[n++] = ((long) graph.label(e) << 32) | classes[neighbour];
+                    e = past ? graph.nextIn(e) : graph.nextOut(e);
+                }
+                Arrays.sort(pairs, 0, n);
+                long[] key = new long[n + 1];
+                key[0] = classes[s];
+                int size = 1;
+                for (int i = 0; i < n; i++) {
+                    if (i == 0 || pairs[i] != pairs[i - 1]) {
+                        key[size++] = pairs[i];
+                    }
+                }
+                Signature signature = new Signature(size == key.length ? key : Arrays.copyOf(key, size));
+                Integer id = ids.get(signature);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(signature, id);
+                }
+                next[s] = id;
+            }
+            classes = next;
+            if (ids.size() == classCount) {
+                break;
+            }
+            classCount = ids.size();
+        }
+        return classes;
+    }
+
+    private static final class Signature {
+        private final long[] key;
+        private final int hash;
+
+        Signature(long[] key) {
+            this.key = key;
+            this.hash = Arrays.hashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Signature && Arrays.equals(key, ((Signature) obj).key);
+        }
+    }
+}
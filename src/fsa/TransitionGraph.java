@@ -0,0 +1,892 @@
+package fsa;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Int-indexed storage for the states and transitions of an {@link FSA}.
+ * States and edges are plain ints; each state threads its outgoing and
+ * incoming edges through linked lists stored in parallel columns, and two
+ * hashed indexes answer (source, label) and (target, label) lookups
+ * without walking those lists. The indexes also keep track of which
+ * states are nondeterministic in either direction as edges change.
+ * <p>
+ * Ingestion only ever adds edges, so what removing and moving them needs
+ * is built at the first removal or merge: backward links that make the
+ * lists doubly linked, so an edge is unlinked in O(1) however many edges
+ * its states have, and a set that finds an exact edge in O(1). Until then
+ * a prefix tree goes without them. A prefix tree also has no conflicts,
+ * so the columns counting them are only allocated with the first one.
+ */
+final class TransitionGraph {
+
+    static final int NONE = -1;
+
+    private static final int LIVE = 1;
+    private static final int ACCEPTING = 2;
+
+    private final IntColumn flags;
+    private final IntColumn firstOut;
+    private final IntColumn firstIn;
+    private int stateCount;
+    private int liveStates;
+    // ids of removed states that were never merged, for addState() to reuse
+    private final IntQueue freeStates;
+
+    // how many sentences passed through each state, stopped in it, and
+    // took each edge; absorb() adds up the counts of whatever it merges.
+    // null unless countFrequencies() was called, and then reads give 0
+    private IntColumn stateFrequency;
+    private IntColumn finalFrequency;
+    private IntColumn edgeFrequency;
+
+    private final IntColumn edgeSource;
+    private final IntColumn edgeTarget;
+    private final IntColumn edgeLabel;
+    private final IntColumn nextOut;
+    private final IntColumn nextIn;
+    // null until the first edge is removed or moved, see ensureRemovable()
+    private IntColumn prevOut;
+    private IntColumn prevIn;
+    private int edgeCount;
+    private int liveEdges;
+    // removed edge slots, chained through nextOut
+    private int freeEdges = NONE;
+    // the first state and edge that append() added and indexAppended()
+    // has not indexed yet, or NONE
+    private int appendedState = NONE;
+    private int appendedEdge = NONE;
+
+    private final EdgeIndex outIndex;
+    private final EdgeIndex inIndex;
+    private EdgeSet edges;
+    private final boolean offHeap;
+
+    // per state, how many labels reach more than one target (out) or come
+    // from more than one source (in); states with either are kept in a
+    // dense list so merge candidates never require a scan of the graph;
+    // null until the first conflict, see addConflict()
+    private IntColumn outConflicts;
+    private IntColumn inConflicts;
+    private IntColumn conflictPosition;
+    private IntColumn conflicted;
+    private int conflictedCount;
+    private int nondeterministicKeys;
+
+    // running totals of what absorb() did to the edges it moved
+    private long edgesRewired;
+    private long selfLoopsCreated;
+    private long duplicatesDropped;
+
+    private GraphChangeListener[] listeners = {};
+
+    TransitionGraph(boolean offHeap) {
+        this.offHeap = offHeap;
+        flags = new IntColumn(0, offHeap);
+        firstOut = new IntColumn(NONE, offHeap);
+        firstIn = new IntColumn(NONE, offHeap);
+        edgeSource = new IntColumn(NONE, offHeap);
+        edgeTarget = new IntColumn(NONE, offHeap);
+        edgeLabel = new IntColumn(NONE, offHeap);
+        nextOut = new IntColumn(NONE, offHeap);
+        nextIn = new IntColumn(NONE, offHeap);
+        outIndex = new EdgeIndex(edgeSource, edgeLabel, offHeap);
+        inIndex = new EdgeIndex(edgeTarget, edgeLabel, offHeap);
+        freeStates = new IntQueue();
+    }
+
+    private TransitionGraph(TransitionGraph other) {
+        offHeap = other.offHeap;
+        flags = other.flags.snapshot();
+        firstOut = other.firstOut.snapshot();
+        firstIn = other.firstIn.snapshot();
+        edgeSource = other.edgeSource.snapshot();
+        edgeTarget = other.edgeTarget.snapshot();
+        edgeLabel = other.edgeLabel.snapshot();
+        nextOut = other.nextOut.snapshot();
+        nextIn = other.nextIn.snapshot();
+        if (other.edges != null) {
+            prevOut = other.prevOut.snapshot();
+            prevIn = other.prevIn.snapshot();
+            edges = other.edges.snapshot(edgeSource, edgeLabel, edgeTarget);
+        }
+        if (other.stateFrequency != null) {
+            stateFrequency = other.stateFrequency.snapshot();
+            finalFrequency = other.finalFrequency.snapshot();
+            edgeFrequency = other.edgeFrequency.snapshot();
+        }
+        if (other.conflicted != null) {
+            outConflicts = other.outConflicts.snapshot();
+            inConflicts = other.inConflicts.snapshot();
+            conflictPosition = other.conflictPosition.snapshot();
+            conflicted = other.conflicted.snapshot();
+        }
+        outIndex = other.outIndex.snapshot(edgeSource, edgeLabel);
+        inIndex = other.inIndex.snapshot(edgeTarget, edgeLabel);
+        freeStates = other.freeStates.copy();
+        stateCount = other.stateCount;
+        liveStates = other.liveStates;
+        edgeCount = other.edgeCount;
+        liveEdges = other.liveEdges;
+        freeEdges = other.freeEdges;
+        conflictedCount = other.conflictedCount;
+        nondeterministicKeys = other.nondeterministicKeys;
+        edgesRewired = other.edgesRewired;
+        selfLoopsCreated = other.selfLoopsCreated;
+        duplicatesDropped = other.duplicatesDropped;
+    }
+
+    /**
+     * Read-only copy of the graph as it is now, sharing its storage with
+     * this graph until either side's pages are written. Listeners are not
+     * carried over.
+     */
+    TransitionGraph snapshot() {
+        return new TransitionGraph(this);
+    }
+
+    /**
+     * Writable copy of this snapshot that takes over the listeners of
+     * {@code current}; this is how an automaton goes back to a checkpoint.
+     * The copy shares every page with the snapshot until it writes to
+     * them, so the snapshot can be restored again later.
+     */
+    TransitionGraph restore(TransitionGraph current) {
+        TransitionGraph restored = new TransitionGraph(this);
+        restored.listeners = current.listeners;
+        return restored;
+    }
+
+    void graphRestored() {
+        for (GraphChangeListener listener : listeners) {
+            listener.graphRestored();
+        }
+    }
+
+    int addState() {
+        int state;
+        if (!freeStates.isEmpty()) {
+            state = freeStates.poll();
+            assert !isLive(state) && firstOut.get(state) == NONE && firstIn.get(state) == NONE;
+            if (stateFrequency != null) {
+                stateFrequency.set(state, 0);
+                finalFrequency.set(state, 0);
+            }
+        } else {
+            state = stateCount++;
+            flags.ensureCapacity(stateCount);
+            firstOut.ensureCapacity(stateCount);
+            firstIn.ensureCapacity(stateCount);
+            if (stateFrequency != null) {
+                stateFrequency.ensureCapacity(stateCount);
+                finalFrequency.ensureCapacity(stateCount);
+            }
+            if (conflicted != null) {
+                outConflicts.ensureCapacity(stateCount);
+                inConflicts.ensureCapacity(stateCount);
+                conflictPosition.ensureCapacity(stateCount);
+            }
+        }
+        flags.set(state, LIVE);
+        liveStates++;
+        for (GraphChangeListener listener : listeners) {
+            listener.stateAdded(state);
+        }
+        return state;
+    }
+
+    void removeState(int state) {
+        assert firstOut.get(state) == NONE && firstIn.get(state) == NONE;
+        flags.set(state, flags.get(state) & ~LIVE);
+        liveStates--;
+        for (GraphChangeListener listener : listeners) {
+            listener.stateRemoved(state);
+        }
+    }
+
+    /**
+     * Removes a state that was never merged, so that addState() may hand
+     * its id out again. Merged states keep their ids, which their merge
+     * sets still refer to.
+     */
+    void releaseState(int state) {
+        removeState(state);
+        freeStates.add(state);
+    }
+
+    boolean isLive(int state) {
+        return (flags.get(state) & LIVE) != 0;
+    }
+
+    boolean isAccepting(int state) {
+        return (flags.get(state) & ACCEPTING) != 0;
+    }
+
+    void setAccepting(int state, boolean accepting) {
+        int f = flags.get(state);
+        int updated = accepting ? f | ACCEPTING : f & ~ACCEPTING;
+        flags.set(state, updated);
+        if (updated != f) {
+            stateChanged(state);
+        }
+    }
+
+    void stateChanged(int state) {
+        for (GraphChangeListener listener : listeners) {
+            listener.stateChanged(state);
+        }
+    }
+
+    void addListener(GraphChangeListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    void removeListener(GraphChangeListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                GraphChangeListener[] remaining = new GraphChangeListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, remaining, 0, i);
+                System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+                listeners = remaining;
+                return;
+            }
+        }
+    }
+
+    int stateCount() {
+        return stateCount;
+    }
+
+    int liveStates() {
+        return liveStates;
+    }
+
+    int liveEdges() {
+        return liveEdges;
+    }
+
+    int firstOut(int state) {
+        return firstOut.get(state);
+    }
+
+    int nextOut(int edge) {
+        return nextOut.get(edge);
+    }
+
+    int firstIn(int state) {
+        return firstIn.get(state);
+    }
+
+    int nextIn(int edge) {
+        return nextIn.get(edge);
+    }
+
+    int source(int edge) {
+        return edgeSource.get(edge);
+    }
+
+    int target(int edge) {
+        return edgeTarget.get(edge);
+    }
+
+    int label(int edge) {
+        return edgeLabel.get(edge);
+    }
+
+    /** Starts counting frequencies; every count so far is 0. */
+    void countFrequencies() {
+        if (stateFrequency != null) {
+            return;
+        }
+        stateFrequency = new IntColumn(0, offHeap);
+        stateFrequency.ensureCapacity(stateCount);
+        finalFrequency = new IntColumn(0, offHeap);
+        finalFrequency.ensureCapacity(stateCount);
+        edgeFrequency = new IntColumn(0, offHeap);
+        edgeFrequency.ensureCapacity(edgeCount);
+    }
+
+    boolean countsFrequencies() {
+        return stateFrequency != null;
+    }
+
+    int stateFrequency(int state) {
+        return stateFrequency == null ? 0 : stateFrequency.get(state);
+    }
+
+    int finalFrequency(int state) {
+        return finalFrequency == null ? 0 : finalFrequency.get(state);
+    }
+
+    int edgeFrequency(int edge) {
+        return edgeFrequency == null ? 0 : edgeFrequency.get(edge);
+    }
+
+    void addStateFrequency(int state, int count) {
+        if (stateFrequency != null) {
+            stateFrequency.set(state, saturatedAdd(stateFrequency.get(state), count));
+        }
+    }
+
+    void addFinalFrequency(int state, int count) {
+        if (finalFrequency != null) {
+            finalFrequency.set(state, saturatedAdd(finalFrequency.get(state), count));
+        }
+    }
+
+    void addEdgeFrequency(int edge, int count) {
+        if (edgeFrequency != null) {
+            edgeFrequency.set(edge, saturatedAdd(edgeFrequency.get(edge), count));
+        }
+    }
+
+    private static int saturatedAdd(int a, int b) {
+        long sum = (long) a + b;
+        return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+
+    int addEdge(int source, int label, int target) {
+        int edge;
+        if (freeEdges != NONE) {
+            edge = freeEdges;
+            freeEdges = nextOut.get(edge);
+        } else {
+            edge = edgeCount++;
+            edgeSource.ensureCapacity(edgeCount);
+            edgeTarget.ensureCapacity(edgeCount);
+            edgeLabel.ensureCapacity(edgeCount);
+            nextOut.ensureCapacity(edgeCount);
+            nextIn.ensureCapacity(edgeCount);
+            if (edges != null) {
+                prevOut.ensureCapacity(edgeCount);
+                prevIn.ensureCapacity(edgeCount);
+            }
+            if (edgeFrequency != null) {
+                edgeFrequency.ensureCapacity(edgeCount);
+            }
+        }
+        edgeSource.set(edge, source);
+        if (edgeFrequency != null) {
+            edgeFrequency.set(edge, 0);
+        }
+        edgeTarget.set(edge, target);
+        edgeLabel.set(edge, label);
+        linkOut(source, edge);
+        linkIn(target, edge);
+        indexOut(edge);
+        indexIn(edge);
+        if (edges != null) {
+            edges.insert(edge);
+        }
+        liveEdges++;
+        for (GraphChangeListener listener : listeners) {
+            listener.edgeAdded(source, label, target);
+        }
+        return edge;
+    }
+
+    /**
+     * Appends the live states of {@code other} that {@code states} leaves
+     * at NONE, numbered on from stateCount() in the order of their ids
+     * there, together with their flags, frequencies and the edges that
+     * lead to them, labels renumbered through {@code labels}. Afterwards
+     * {@code states} maps every live state of {@code other}. This is how a
+     * prefix trie built elsewhere is grafted without adding its states one
+     * at a time: every edge of a trie leads to a state of its own, so the
+     * edges into states that were already mapped are the caller's to merge.
+     * <p>
+     * The appended edges are linked into their states' lists but not
+     * indexed: lookups must not touch them until indexAppended(), which
+     * indexes everything appended since in one pass and then tells the
+     * listeners about it.
+     */
+    void append(TransitionGraph other, int[] states, int[] labels) {
+        int firstState = stateCount;
+        if (appendedState == NONE) {
+            appendedState = stateCount;
+            appendedEdge = edgeCount;
+        }
+        for (int s = 0; s < other.stateCount; s++) {
+            if (states[s] == NONE && other.isLive(s)) {
+                states[s] = stateCount++;
+            }
+        }
+        flags.ensureCapacity(stateCount);
+        firstOut.ensureCapacity(stateCount);
+        firstIn.ensureCapacity(stateCount);
+        if (stateFrequency != null) {
+            stateFrequency.ensureCapacity(stateCount);
+            finalFrequency.ensureCapacity(stateCount);
+        }
+        if (conflicted != null) {
+            outConflicts.ensureCapacity(stateCount);
+            inConflicts.ensureCapacity(stateCount);
+            conflictPosition.ensureCapacity(stateCount);
+        }
+        for (int s = 0; s < other.stateCount; s++) {
+            int state = states[s];
+            if (state >= firstState) {
+                flags.set(state, LIVE | (other.flags.get(s) & ACCEPTING));
+                if (stateFrequency != null) {
+                    stateFrequency.set(state, other.stateFrequency(s));
+                    finalFrequency.set(state, other.finalFrequency(s));
+                }
+            }
+        }
+        liveStates += stateCount - firstState;
+
+        int firstEdge = edgeCount;
+        for (int e = 0; e < other.edgeCount; e++) {
+            if (other.edgeLabel.get(e) != NONE && states[other.edgeTarget.get(e)] >= firstState) {
+                edgeCount++;
+            }
+        }
+        edgeSource.ensureCapacity(edgeCount);
+        edgeTarget.ensureCapacity(edgeCount);
+        edgeLabel.ensureCapacity(edgeCount);
+        nextOut.ensureCapacity(edgeCount);
+        nextIn.ensureCapacity(edgeCount);
+        if (edges != null) {
+            prevOut.ensureCapacity(edgeCount);
+            prevIn.ensureCapacity(edgeCount);
+        }
+        if (edgeFrequency != null) {
+            edgeFrequency.ensureCapacity(edgeCount);
+        }
+        int edge = firstEdge;
+        for (int e = 0; e < other.edgeCount; e++) {
+            int label = other.edgeLabel.get(e);
+            int target = label == NONE ? NONE : states[other.edgeTarget.get(e)];
+            if (target < firstState) {
+                continue;
+            }
+            int source = states[other.edgeSource.get(e)];
+            edgeSource.set(edge, source);
+            edgeTarget.set(edge, target);
+            edgeLabel.set(edge, labels[label]);
+            if (edgeFrequency != null) {
+                edgeFrequency.set(edge, other.edgeFrequency(e));
+            }
+            linkOut(source, edge);
+            linkIn(target, edge);
+            edge++;
+        }
+        liveEdges += edgeCount - firstEdge;
+    }
+
+    /**
+     * Indexes the edges append() added since the last call, building the
+     * (source, label) and (target, label) indexes side by side on
+     * {@code pool} when there is one, and reports the appended states and
+     * edges to the listeners.
+     */
+    void indexAppended(ForkJoinPool pool) {
+        if (appendedState == NONE) {
+            return;
+        }
+        int from = appendedEdge;
+        int to = edgeCount;
+        IntQueue outConflicts;
+        IntQueue inConflicts;
+        if (pool == null) {
+            outConflicts = outIndex.insertAll(from, to);
+            inConflicts = inIndex.insertAll(from, to);
+        } else {
+            ForkJoinTask<IntQueue> in = pool.submit(() -> inIndex.insertAll(from, to));
+            outConflicts = outIndex.insertAll(from, to);
+            inConflicts = in.join();
+        }
+        while (!outConflicts.isEmpty()) {
+            nondeterministicKeys++;
+            addConflict(true, edgeSource.get(outConflicts.poll()));
+        }
+        while (!inConflicts.isEmpty()) {
+            addConflict(false, edgeTarget.get(inConflicts.poll()));
+        }
+        if (edges != null) {
+            for (int e = from; e < to; e++) {
+                edges.insert(e);
+            }
+        }
+        int firstState = appendedState;
+        appendedState = NONE;
+        appendedEdge = NONE;
+        for (GraphChangeListener listener : listeners) {
+            for (int state = firstState; state < stateCount; state++) {
+                listener.stateAdded(state);
+            }
+            for (int e = from; e < to; e++) {
+                listener.edgeAdded(edgeSource.get(e), edgeLabel.get(e), edgeTarget.get(e));
+            }
+        }
+    }
+
+    void removeEdge(int edge) {
+        ensureRemovable();
+        unlinkOut(edgeSource.get(edge), edge);
+        unlinkIn(edgeTarget.get(edge), edge);
+        release(edge);
+    }
+
+    int findEdge(int source, int label, int target) {
+        if (edges == null) {
+            for (int e = outIndex.first(source, label); e != EdgeIndex.EMPTY; e = outIndex.next(e)) {
+                if (edgeTarget.get(e) == target) {
+                    return e;
+                }
+            }
+            return NONE;
+        }
+        int e = edges.find(source, label, target);
+        return e == EdgeSet.EMPTY ? NONE : e;
+    }
+
+    /** Returns an edge from {@code source} on {@code label}, or NONE. */
+    int findEdge(int source, int label) {
+        int e = outIndex.first(source, label);
+        return e == EdgeIndex.EMPTY ? NONE : e;
+    }
+
+    int nextState(int source, int label) {
+        int e = findEdge(source, label);
+        return e == NONE ? NONE : edgeTarget.get(e);
+    }
+
+    int targetCount(int source, int label) {
+        return outIndex.count(source, label);
+    }
+
+    int sourceCount(int target, int label) {
+        return inIndex.count(target, label);
+    }
+
+    /** True if {@code label} leads out of {@code source} to more than one target. */
+    boolean hasSeveralTargets(int source, int label) {
+        return outIndex.several(source, label);
+    }
+
+    /** True if {@code label} leads into {@code target} from more than one source. */
+    boolean hasSeveralSources(int target, int label) {
+        return inIndex.several(target, label);
+    }
+
+    int[] targets(int source, int label) {
+        int[] targets = new int[targetCount(source, label)];
+        int i = 0;
+        for (int e = outIndex.first(source, label); e != EdgeIndex.EMPTY; e = outIndex.next(e)) {
+            targets[i++] = edgeTarget.get(e);
+        }
+        return targets;
+    }
+
+    int[] sources(int target, int label) {
+        int[] sources = new int[sourceCount(target, label)];
+        int i = 0;
+        for (int e = inIndex.first(target, label); e != EdgeIndex.EMPTY; e = inIndex.next(e)) {
+            sources[i++] = edgeSource.get(e);
+        }
+        return sources;
+    }
+
+    /** True if some label leads out of {@code state} to more than one target. */
+    boolean hasOutConflict(int state) {
+        return outConflicts != null && outConflicts.get(state) > 0;
+    }
+
+    /** True if some label leads into {@code state} from more than one source. */
+    boolean hasInConflict(int state) {
+        return inConflicts != null && inConflicts.get(state) > 0;
+    }
+
+    boolean isDeterministic() {
+        return nondeterministicKeys == 0;
+    }
+
+    /** Number of states that currently have an out or in conflict. */
+    int conflictedCount() {
+        return conflictedCount;
+    }
+
+    int conflictedState(int i) {
+        return conflicted.get(i);
+    }
+
+    /**
+     * Moves every transition of {@code from} onto {@code into}. Transitions
+     * between the two states become self loops on {@code into}, and any
+     * transition {@code into} already has is dropped rather than duplicated,
+     * its frequency added to the one that stays.
+     * Afterwards {@code from} has no edges left.
+     */
+    void absorb(int into, int from) {
+        ensureRemovable();
+        int out = firstOut.get(from);
+        int in = firstIn.get(from);
+        firstOut.set(from, NONE);
+        firstIn.set(from, NONE);
+
+        while (out != NONE) {
+            int e = out;
+            out = nextOut.get(e);
+            int target = edgeTarget.get(e);
+            if (target == from) {
+                // self loop, handled with the incoming edges below
+                continue;
+            }
+            int kept = findEdge(into, edgeLabel.get(e), target);
+            if (kept != NONE) {
+                addEdgeFrequency(kept, edgeFrequency(e));
+                unlinkIn(target, e);
+                release(e);
+                duplicatesDropped++;
+            } else {
+                if (target == into) {
+                    selfLoopsCreated++;
+                } else {
+                    edgesRewired++;
+                }
+                unindexOut(e);
+                edges.remove(e);
+                edgeSource.set(e, into);
+                indexOut(e);
+                edges.insert(e);
+                linkOut(into, e);
+                moved(e, from, target);
+            }
+        }
+
+        while (in != NONE) {
+            int e = in;
+            in = nextIn.get(e);
+            int source = edgeSource.get(e);
+            int label = edgeLabel.get(e);
+            if (source == from) {
+                int kept = findEdge(into, label, into);
+                if (kept != NONE) {
+                    addEdgeFrequency(kept, edgeFrequency(e));
+                    release(e);
+                    duplicatesDropped++;
+                } else {
+                    selfLoopsCreated++;
+                    unindexOut(e);
+                    unindexIn(e);
+                    edges.remove(e);
+                    edgeSource.set(e, into);
+                    edgeTarget.set(e, into);
+                    indexOut(e);
+                    indexIn(e);
+                    edges.insert(e);
+                    linkOut(into, e);
+                    linkIn(into, e);
+                    moved(e, from, from);
+                }
+                continue;
+            }
+            int kept = findEdge(source, label, into);
+            if (kept != NONE) {
+                addEdgeFrequency(kept, edgeFrequency(e));
+                unlinkOut(source, e);
+                release(e);
+                duplicatesDropped++;
+            } else {
+                if (source == into) {
+                    selfLoopsCreated++;
+                } else {
+                    edgesRewired++;
+                }
+                unindexIn(e);
+                edges.remove(e);
+                edgeTarget.set(e, into);
+                indexIn(e);
+                edges.insert(e);
+                linkIn(into, e);
+                moved(e, source, from);
+            }
+        }
+        addStateFrequency(into, stateFrequency(from));
+        addFinalFrequency(into, finalFrequency(from));
+    }
+
+    long edgesRewired() {
+        return edgesRewired;
+    }
+
+    long selfLoopsCreated() {
+        return selfLoopsCreated;
+    }
+
+    long duplicatesDropped() {
+        return duplicatesDropped;
+    }
+
+    long bytes() {
+        return flags.bytes() + firstOut.bytes() + firstIn.bytes()
+                + edgeSource.bytes() + edgeTarget.bytes() + edgeLabel.bytes()
+                + nextOut.bytes() + nextIn.bytes()
+                + (stateFrequency == null ? 0
+                        : stateFrequency.bytes() + finalFrequency.bytes() + edgeFrequency.bytes())
+                + outIndex.bytes() + inIndex.bytes()
+                + (conflicted == null ? 0
+                        : outConflicts.bytes() + inConflicts.bytes() + conflictPosition.bytes() + conflicted.bytes())
+                + (edges == null ? 0 : prevOut.bytes() + prevIn.bytes() + edges.bytes());
+    }
+
+    // builds the backward links and the edge set from the forward lists;
+    // every edge is live then, as none has been removed yet
+    private void ensureRemovable() {
+        if (edges != null) {
+            return;
+        }
+        prevOut = new IntColumn(NONE, offHeap);
+        prevOut.ensureCapacity(edgeCount);
+        prevIn = new IntColumn(NONE, offHeap);
+        prevIn.ensureCapacity(edgeCount);
+        edges = new EdgeSet(edgeSource, edgeLabel, edgeTarget, edgeCount, offHeap);
+        for (int s = 0; s < stateCount; s++) {
+            int prev = NONE;
+            for (int e = firstOut.get(s); e != NONE; e = nextOut.get(e)) {
+                prevOut.set(e, prev);
+                prev = e;
+            }
+            prev = NONE;
+            for (int e = firstIn.get(s); e != NONE; e = nextIn.get(e)) {
+                prevIn.set(e, prev);
+                prev = e;
+            }
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            edges.insert(e);
+        }
+    }
+
+    private void linkOut(int state, int edge) {
+        int head = firstOut.get(state);
+        nextOut.set(edge, head);
+        if (prevOut != null) {
+            prevOut.set(edge, NONE);
+            if (head != NONE) {
+                prevOut.set(head, edge);
+            }
+        }
+        firstOut.set(state, edge);
+    }
+
+    private void linkIn(int state, int edge) {
+        int head = firstIn.get(state);
+        nextIn.set(edge, head);
+        if (prevIn != null) {
+            prevIn.set(edge, NONE);
+            if (head != NONE) {
+                prevIn.set(head, edge);
+            }
+        }
+        firstIn.set(state, edge);
+    }
+
+    private void unlinkOut(int state, int edge) {
+        int prev = prevOut.get(edge);
+        int next = nextOut.get(edge);
+        if (prev == NONE) {
+            firstOut.set(state, next);
+        } else {
+            nextOut.set(prev, next);
+        }
+        if (next != NONE) {
+            prevOut.set(next, prev);
+        }
+    }
+
+    private void unlinkIn(int state, int edge) {
+        int prev = prevIn.get(edge);
+        int next = nextIn.get(edge);
+        if (prev == NONE) {
+            firstIn.set(state, next);
+        } else {
+            nextIn.set(prev, next);
+        }
+        if (next != NONE) {
+            prevIn.set(next, prev);
+        }
+    }
+
+    // a key reaching two edges opens a conflict, dropping back to one closes it
+
+    private void indexOut(int edge) {
+        if (outIndex.insert(edge)) {
+            nondeterministicKeys++;
+            addConflict(true, edgeSource.get(edge));
+        }
+    }
+
+    private void unindexOut(int edge) {
+        if (outIndex.remove(edge)) {
+            nondeterministicKeys--;
+            removeConflict(true, edgeSource.get(edge));
+        }
+    }
+
+    private void indexIn(int edge) {
+        if (inIndex.insert(edge)) {
+            addConflict(false, edgeTarget.get(edge));
+        }
+    }
+
+    private void unindexIn(int edge) {
+        if (inIndex.remove(edge)) {
+            removeConflict(false, edgeTarget.get(edge));
+        }
+    }
+
+    private void addConflict(boolean out, int state) {
+        if (conflicted == null) {
+            outConflicts = new IntColumn(0, offHeap);
+            outConflicts.ensureCapacity(stateCount);
+            inConflicts = new IntColumn(0, offHeap);
+            inConflicts.ensureCapacity(stateCount);
+            conflictPosition = new IntColumn(NONE, offHeap);
+            conflictPosition.ensureCapacity(stateCount);
+            conflicted = new IntColumn(NONE, offHeap);
+        }
+        IntColumn conflicts = out ? outConflicts : inConflicts;
+        conflicts.set(state, conflicts.get(state) + 1);
+        if (conflictPosition.get(state) == NONE) {
+            conflicted.ensureCapacity(conflictedCount + 1);
+            conflicted.set(conflictedCount, state);
+            conflictPosition.set(state, conflictedCount++);
+        }
+    }
+
+    private void removeConflict(boolean out, int state) {
+        IntColumn conflicts = out ? outConflicts : inConflicts;
+        conflicts.set(state, conflicts.get(state) - 1);
+        if (outConflicts.get(state) == 0 && inConflicts.get(state) == 0) {
+            // swap the last conflicted state into the vacated position
+            int position = conflictPosition.get(state);
+            int last = conflicted.get(--conflictedCount);
+            conflicted.set(position, last);
+            conflictPosition.set(last, position);
+            conflictPosition.set(state, NONE);
+        }
+    }
+
+    private void moved(int edge, int oldSource, int oldTarget) {
+        for (GraphChangeListener listener : listeners) {
+            listener.edgeMoved(edgeLabel.get(edge), oldSource, oldTarget, edgeSource.get(edge), edgeTarget.get(edge));
+        }
+    }
+
+    private void release(int edge) {
+        for (GraphChangeListener listener : listeners) {
+            listener.edgeRemoved(edgeSource.get(edge), edgeLabel.get(edge), edgeTarget.get(edge));
+        }
+        unindexOut(edge);
+        unindexIn(edge);
+        edges.remove(edge);
+        edgeLabel.set(edge, NONE);
+        nextOut.set(edge, freeEdges);
+        freeEdges = edge;
+        liveEdges--;
+    }
+}
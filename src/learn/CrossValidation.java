@@ -0,0 +1,144 @@
+package learn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import fsa.CompiledDFA;
+import fsa.FSA;
+import fsa.SymbolTable;
+
+/**
+ * k-fold cross-validation of a learning strategy. The sentences are
+ * shuffled into k folds; each fold is learned from the other k - 1 on its
+ * own thread, then its held-out sentences and all negative samples are run
+ * through the compiled result. Every sentence is tokenized once, up front,
+ * into a vocabulary all folds share, so the folds only ever read it.
+ */
+public final class CrossValidation {
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final List<int[]> positives = new ArrayList<>();
+    private final List<int[]> negatives = new ArrayList<>();
+    private final int folds;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private long seed;
+    private Consumer<FSA> learner = FSA::learn;
+
+    /**
+     * {@code positives} are split into the folds; {@code negatives} are
+     * sentences the language should not contain, tested against every fold.
+     */
+    public CrossValidation(List<String> positives, List<String> negatives, int folds) {
+        if (folds < 2) {
+            throw new IllegalArgumentException("cross-validation needs at least 2 folds, not " + folds);
+        }
+        if (positives.size() < folds) {
+            throw new IllegalArgumentException(
+                    folds + " folds need at least as many sentences, not " + positives.size());
+        }
+        this.folds = folds;
+        for (String sentence : positives) {
+            this.positives.add(symbols.internAll(sentence));
+        }
+        for (String sentence : negatives) {
+            this.negatives.add(symbols.internAll(sentence));
+        }
+    }
+
+    /** Number of folds learned at the same time; defaults to the number of processors. */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /** Seed of the shuffle that assigns sentences to folds; defaults to 0. */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /** Turns each fold's prefix tree into the learned automaton; defaults to {@link FSA#learn()}. */
+    public void setLearner(Consumer<FSA> learner) {
+        this.learner = learner;
+    }
+
+    public CrossValidationReport run() {
+        List<Integer> shuffled = new ArrayList<>();
+        for (int i = 0; i < positives.size(); i++) {
+            shuffled.add(i);
+        }
+        Collections.shuffle(shuffled, new Random(seed));
+        int[] foldOf = new int[positives.size()];
+        for (int i = 0; i < shuffled.size(); i++) {
+            foldOf[shuffled.get(i)] = i % folds;
+        }
+
+        List<Callable<FoldResult>> tasks = new ArrayList<>();
+        for (int f = 0; f < folds; f++) {
+            int fold = f;
+            tasks.add(() -> runFold(fold, foldOf));
+        }
+        long startTime = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, folds));
+        try {
+            List<FoldResult> results = new ArrayList<>();
+            for (Future<FoldResult> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            return new CrossValidationReport(results, System.nanoTime() - startTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while cross-validating", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to learn a fold", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private FoldResult runFold(int fold, int[] foldOf) {
+        long startTime = System.nanoTime();
+        FSA fsa = new FSA(symbols, false);
+        int training = 0;
+        for (int i = 0; i < positives.size(); i++) {
+            if (foldOf[i] != fold) {
+                fsa.ingestSentence(positives.get(i));
+                training++;
+            }
+        }
+        long peakBytes = fsa.memoryFootprint();
+        learner.accept(fsa);
+        long learningNanos = System.nanoTime() - startTime;
+        peakBytes = Math.max(peakBytes, fsa.memoryFootprint());
+
+        CompiledDFA acceptor = fsa.compile();
+        int truePositives = 0;
+        int falseNegatives = 0;
+        for (int i = 0; i < positives.size(); i++) {
+            if (foldOf[i] == fold) {
+                if (acceptor.accepts(positives.get(i))) {
+                    truePositives++;
+                } else {
+                    falseNegatives++;
+                }
+            }
+        }
+        int falsePositives = 0;
+        for (int[] sentence : negatives) {
+            if (acceptor.accepts(sentence)) {
+                falsePositives++;
+            }
+        }
+        return new FoldResult(fold, training, fsa.getStateCount(), truePositives, falseNegatives, falsePositives,
+                negatives.size() - falsePositives, learningNanos, peakBytes);
+    }
+}
@@ -0,0 +1,53 @@
+package learn;
+
+import java.util.Collections;
+import java.util.List;
+
+public class CrossValidationReport {
+
+    private final List<FoldResult> folds;
+    private final long wallTimeNanos;
+
+    public CrossValidationReport(List<FoldResult> folds, long wallTimeNanos) {
+        this.folds = Collections.unmodifiableList(folds);
+        this.wallTimeNanos = wallTimeNanos;
+    }
+
+    /** One result per fold, in fold order. */
+    public List<FoldResult> getFolds() {
+        return folds;
+    }
+
+    /** Precision over the counts of all folds together. */
+    public double getPrecision() {
+        long truePositives = 0;
+        long accepted = 0;
+        for (FoldResult fold : folds) {
+            truePositives += fold.getTruePositives();
+            accepted += fold.getTruePositives() + fold.getFalsePositives();
+        }
+        return FoldResult.ratio(truePositives, accepted);
+    }
+
+    /** Recall over the counts of all folds together. */
+    public double getRecall() {
+        long truePositives = 0;
+        long heldOut = 0;
+        for (FoldResult fold : folds) {
+            truePositives += fold.getTruePositives();
+            heldOut += fold.getTruePositives() + fold.getFalseNegatives();
+        }
+        return FoldResult.ratio(truePositives, heldOut);
+    }
+
+    /** Time for all folds, which may have run concurrently. */
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "CrossValidationReport [folds=" + folds.size() + ", precision=" + getPrecision() + ", recall="
+                + getRecall() + ", wallTimeMillis=" + wallTimeNanos / 1_000_000 + "]";
+    }
+}
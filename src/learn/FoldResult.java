@@ -0,0 +1,91 @@
+package learn;
+
+public class FoldResult {
+
+    private final int fold;
+    private final int trainingSentences;
+    private final int states;
+    private final int truePositives;
+    private final int falseNegatives;
+    private final int falsePositives;
+    private final int trueNegatives;
+    private final long learningNanos;
+    private final long peakBytes;
+
+    public FoldResult(int fold, int trainingSentences, int states, int truePositives, int falseNegatives,
+            int falsePositives, int trueNegatives, long learningNanos, long peakBytes) {
+        this.fold = fold;
+        this.trainingSentences = trainingSentences;
+        this.states = states;
+        this.truePositives = truePositives;
+        this.falseNegatives = falseNegatives;
+        this.falsePositives = falsePositives;
+        this.trueNegatives = trueNegatives;
+        this.learningNanos = learningNanos;
+        this.peakBytes = peakBytes;
+    }
+
+    public int getFold() {
+        return fold;
+    }
+
+    public int getTrainingSentences() {
+        return trainingSentences;
+    }
+
+    /** States of the learned automaton. */
+    public int getStates() {
+        return states;
+    }
+
+    /** Held-out sentences the learned automaton accepts. */
+    public int getTruePositives() {
+        return truePositives;
+    }
+
+    /** Held-out sentences the learned automaton rejects. */
+    public int getFalseNegatives() {
+        return falseNegatives;
+    }
+
+    /** Negative samples the learned automaton accepts. */
+    public int getFalsePositives() {
+        return falsePositives;
+    }
+
+    /** Negative samples the learned automaton rejects. */
+    public int getTrueNegatives() {
+        return trueNegatives;
+    }
+
+    /** Accepted held-out sentences over all accepted samples; NaN if nothing was accepted. */
+    public double getPrecision() {
+        return ratio(truePositives, truePositives + falsePositives);
+    }
+
+    /** Accepted held-out sentences over all held-out sentences; NaN if there were none. */
+    public double getRecall() {
+        return ratio(truePositives, truePositives + falseNegatives);
+    }
+
+    /** Time to build the prefix tree and learn from it. */
+    public long getLearningNanos() {
+        return learningNanos;
+    }
+
+    /** Largest memory footprint of the automaton, see {@link fsa.FSA#memoryFootprint()}. */
+    public long getPeakBytes() {
+        return peakBytes;
+    }
+
+    static double ratio(long part, long whole) {
+        return whole == 0 ? Double.NaN : (double) part / whole;
+    }
+
+    @Override
+    public String toString() {
+        return "FoldResult [fold=" + fold + ", trainingSentences=" + trainingSentences + ", states=" + states
+                + ", precision=" + getPrecision() + ", recall=" + getRecall() + ", learningMillis="
+                + learningNanos / 1_000_000 + ", peakBytes=" + peakBytes + "]";
+    }
+}
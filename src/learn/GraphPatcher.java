@@ -0,0 +1,245 @@
+package learn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import edu.uci.ics.jung.graph.DirectedSparseMultigraph;
+import fsa.FSA;
+import fsa.FSAEdge;
+import fsa.FSANode;
+import fsa.GraphChangeListener;
+
+/**
+ * Keeps a JUNG copy of an {@link FSA} up to date from its change events
+ * instead of re-exporting the whole automaton after every merge. Events are
+ * only recorded while the automaton changes; {@link #flush()} applies them
+ * and must not run concurrently with changes to the automaton.
+ */
+public class GraphPatcher implements GraphChangeListener {
+
+    private final FSA fsa;
+    private final DirectedSparseMultigraph<FSANode, FSAEdge> graph;
+    private final Map<Integer, FSANode> nodes = new HashMap<>();
+    // labels of the transitions between two states, drawn as one edge
+    private final Map<Long, List<Integer>> labels = new HashMap<>();
+    private final Map<Long, FSAEdge> edges = new HashMap<>();
+
+    private final Set<Integer> addedStates = new LinkedHashSet<>();
+    private final Set<Integer> removedStates = new HashSet<>();
+    private final Set<Integer> changedStates = new HashSet<>();
+    private final Set<Long> changedPairs = new LinkedHashSet<>();
+
+    public GraphPatcher(FSA fsa) {
+        this.fsa = fsa;
+        graph = new DirectedSparseMultigraph<FSANode, FSAEdge>();
+        load();
+        fsa.addGraphChangeListener(this);
+    }
+
+    // copies the whole automaton into the graph
+    private void load() {
+        DirectedSparseMultigraph<FSANode, FSAEdge> exported = fsa.getVisualGraph();
+        for (FSANode node : exported.getVertices()) {
+            nodes.put(node.getState(), node);
+            graph.addVertex(node);
+        }
+        for (FSAEdge edge : exported.getEdges()) {
+            graph.addEdge(edge, edge.getSource(), edge.getTarget());
+            long pair = pair(edge.getSource().getState(), edge.getTarget().getState());
+            // from the label ids, as token names may contain the separator or be empty
+            List<Integer> pairLabels = new ArrayList<>();
+            for (int label : fsa.getTransitionLabels(edge.getSource().getState(), edge.getTarget().getState())) {
+                pairLabels.add(label);
+            }
+            labels.put(pair, pairLabels);
+            edges.put(pair, edge);
+        }
+    }
+
+    private static long pair(int source, int target) {
+        return ((long) source << 32) | (target & 0xffffffffL);
+    }
+
+    /** The patched graph; only valid to read after {@link #flush()}. */
+    public DirectedSparseMultigraph<FSANode, FSAEdge> getGraph() {
+        return graph;
+    }
+
+    public FSANode getNode(int state) {
+        return nodes.get(state);
+    }
+
+    @Override
+    public void stateAdded(int state) {
+        addedStates.add(state);
+    }
+
+    @Override
+    public void stateRemoved(int state) {
+        if (!addedStates.remove(state)) {
+            removedStates.add(state);
+        }
+        changedStates.remove(state);
+    }
+
+    @Override
+    public void stateChanged(int state) {
+        changedStates.add(state);
+    }
+
+    @Override
+    public void edgeAdded(int source, int label, int target) {
+        long pair = pair(source, target);
+        labels.computeIfAbsent(pair, p -> new ArrayList<>()).add(0, label);
+        changedPairs.add(pair);
+    }
+
+    @Override
+    public void edgeRemoved(int source, int label, int target) {
+        long pair = pair(source, target);
+        List<Integer> pairLabels = labels.get(pair);
+        if (pairLabels == null) {
+            return;
+        }
+        pairLabels.remove(Integer.valueOf(label));
+        if (pairLabels.isEmpty()) {
+            labels.remove(pair);
+        }
+        changedPairs.add(pair);
+    }
+
+    @Override
+    public void edgeMoved(int label, int oldSource, int oldTarget, int newSource, int newTarget) {
+        edgeRemoved(oldSource, label, oldTarget);
+        edgeAdded(newSource, label, newTarget);
+    }
+
+    // after a rollback the old graph is thrown away and exported afresh
+    @Override
+    public void graphRestored() {
+        for (FSANode node : new ArrayList<>(graph.getVertices())) {
+            graph.removeVertex(node);
+        }
+        nodes.clear();
+        labels.clear();
+        edges.clear();
+        addedStates.clear();
+        removedStates.clear();
+        changedStates.clear();
+        changedPairs.clear();
+        load();
+    }
+
+    /** Applies the changes recorded since the last flush to the graph. */
+    public void flush() {
+        for (int state : removedStates) {
+            FSANode node = nodes.remove(state);
+            if (node != null) {
+                for (FSAEdge edge : new ArrayList<>(graph.getIncidentEdges(node))) {
+                    edges.remove(pair(graph.getSource(edge).getState(), graph.getDest(edge).getState()));
+                }
+                graph.removeVertex(node);
+            }
+        }
+        for (int state : addedStates) {
+            FSANode node = fsa.getNode(state);
+            nodes.put(state, node);
+            graph.addVertex(node);
+        }
+        for (int state : changedStates) {
+            if (!addedStates.contains(state)) {
+                replace(nodes.get(state), fsa.getNode(state));
+            }
+        }
+        for (long pair : changedPairs) {
+            FSAEdge old = edges.remove(pair);
+            if (old != null) {
+                graph.removeEdge(old);
+            }
+            List<Integer> pairLabels = labels.get(pair);
+            FSANode source = nodes.get((int) (pair >>> 32));
+            FSANode target = nodes.get((int) pair);
+            if (pairLabels != null && source != null && target != null) {
+                StringJoiner label = new StringJoiner(", ");
+                for (int l : pairLabels) {
+                    label.add(fsa.getSymbolTable().label(l));
+                }
+                FSAEdge edge = new FSAEdge(source, target, label.toString());
+                edges.put(pair, edge);
+                graph.addEdge(edge, source, target);
+            }
+        }
+        addedStates.clear();
+        removedStates.clear();
+        changedStates.clear();
+        changedPairs.clear();
+    }
+
+    // vertices are immutable views, so a renamed state gets a new vertex
+    // that takes over the old one's edges
+    private void replace(FSANode old, FSANode node) {
+        if (old == null) {
+            return;
+        }
+        List<FSAEdge> incident = new ArrayList<>(graph.getIncidentEdges(old));
+        List<FSANode> sources = new ArrayList<>();
+        List<FSANode> targets = new ArrayList<>();
+        for (FSAEdge edge : incident) {
+            sources.add(graph.getSource(edge));
+            targets.add(graph.getDest(edge));
+        }
+        graph.removeVertex(old);
+        nodes.put(node.getState(), node);
+        graph.addVertex(node);
+        for (int i = 0; i < incident.size(); i++) {
+            FSAEdge edge = incident.get(i);
+            FSANode source = sources.get(i).equals(node) ? node : sources.get(i);
+            FSANode target = targets.get(i).equals(node) ? node : targets.get(i);
+            FSAEdge moved = new FSAEdge(source, target, edge.getLabel());
+            edges.put(pair(source.getState(), target.getState()), moved);
+            graph.addEdge(moved, source, target);
+        }
+    }
+
+    /**
+     * Level of detail for large automata: if the graph has more than
+     * {@code budget} vertices, returns the subgraph of the {@code budget}
+     * states closest to the start state and adds to {@code collapsed} the
+     * shown states that have hidden successors. Otherwise returns a copy of
+     * the whole graph.
+     */
+    public DirectedSparseMultigraph<FSANode, FSAEdge> visibleGraph(int budget, Set<FSANode> collapsed) {
+        DirectedSparseMultigraph<FSANode, FSAEdge> visible = new DirectedSparseMultigraph<FSANode, FSAEdge>();
+        FSANode start = nodes.get(fsa.getStartState());
+        if (start == null) {
+            return visible;
+        }
+        List<FSANode> order = new ArrayList<>();
+        order.add(start);
+        visible.addVertex(start);
+        for (int head = 0; head < order.size() && order.size() < budget; head++) {
+            for (FSANode next : graph.getSuccessors(order.get(head))) {
+                if (order.size() < budget && visible.addVertex(next)) {
+                    order.add(next);
+                }
+            }
+        }
+        for (FSANode node : order) {
+            for (FSAEdge edge : graph.getOutEdges(node)) {
+                FSANode target = graph.getDest(edge);
+                if (visible.containsVertex(target)) {
+                    visible.addEdge(edge, node, target);
+                } else {
+                    collapsed.add(node);
+                }
+            }
+        }
+        return visible;
+    }
+}
@@ -5,13 +5,40 @@ import java.awt.Dimension;
 import java.awt.Paint;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.geom.Point2D;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 
 import org.apache.commons.collections15.Transformer;
 
-import edu.uci.ics.jung.algorithms.layout.ISOMLayout;
+import edu.uci.ics.jung.algorithms.layout.FRLayout;
 import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.algorithms.layout.StaticLayout;
+import edu.uci.ics.jung.graph.DirectedSparseMultigraph;
 import edu.uci.ics.jung.visualization.VisualizationViewer;
 import edu.uci.ics.jung.visualization.control.DefaultModalGraphMouse;
 import edu.uci.ics.jung.visualization.control.ModalGraphMouse;
@@ -19,6 +46,7 @@ import edu.uci.ics.jung.visualization.decorators.ToStringLabeller;
 import fsa.FSA;
 import fsa.FSAEdge;
 import fsa.FSANode;
+import fsa.LearningSummary;
 
 public class Main {
     
@@ -44,24 +72,281 @@ public class Main {
             
    
     
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "usage: java learn.Main [options]",
+            "  --input FILE|-       corpus with one sentence per line (default: - for stdin)",
+            "  --format FORMAT      dot, snapshot or stats (default: stats)",
+            "  --output FILE        where to write the result (default: stdout; required for snapshot)",
+            "  --chunk-size N       sentences read into memory at a time (default: 100000)",
+            "  --threads N          threads used to build the prefix tree (default: 1)",
+            "  --sorted             the input is sorted; build the minimal acyclic automaton while reading",
+            "  --off-heap           keep the automaton outside the Java heap (see -XX:MaxDirectMemorySize)",
+            "  --state-budget N     prune the least frequent sentences to keep the prefix tree under N states",
+            "  --cross-validate K   report precision and recall of K-fold cross-validation instead",
+            "  --negatives FILE     sentences outside the language, for --cross-validate",
+            "  --gui                step through the merges in the graph viewer instead, one per key press;",
+            "                       left arrow or backspace steps back, up to 32 merges",
+            "                       (uses the built-in example sentences without --input)");
+
+    private static final int DEFAULT_CHUNK_SIZE = 100_000;
+
     public static void main(String[] args) {
-        FSA fsa = new FSA();
-        
-        for(String sentence : sentences) {
-            fsa.ingestSentence(sentence);
+        String input = null;
+        String format = "stats";
+        String output = null;
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        int threads = 1;
+        boolean gui = false;
+        boolean sorted = false;
+        boolean offHeap = false;
+        int stateBudget = 0;
+        int crossValidate = 0;
+        String negatives = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--input":
+                        input = value(args, ++i);
+                        break;
+                    case "--format":
+                        format = value(args, ++i);
+                        break;
+                    case "--output":
+                        output = value(args, ++i);
+                        break;
+                    case "--chunk-size":
+                        chunkSize = positive(args, ++i);
+                        break;
+                    case "--threads":
+                        threads = positive(args, ++i);
+                        break;
+                    case "--sorted":
+                        sorted = true;
+                        break;
+                    case "--off-heap":
+                        offHeap = true;
+                        break;
+                    case "--state-budget":
+                        stateBudget = positive(args, ++i);
+                        break;
+                    case "--cross-validate":
+                        crossValidate = positive(args, ++i);
+                        if (crossValidate < 2) {
+                            throw new IllegalArgumentException("--cross-validate needs at least 2 folds");
+                        }
+                        break;
+                    case "--negatives":
+                        negatives = value(args, ++i);
+                        break;
+                    case "--gui":
+                        gui = true;
+                        break;
+                    case "--help":
+                        System.out.println(USAGE);
+                        return;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            if (!format.equals("dot") && !format.equals("snapshot") && !format.equals("stats")) {
+                throw new IllegalArgumentException("unknown format " + format);
+            }
+            if (format.equals("snapshot") && output == null) {
+                throw new IllegalArgumentException("--format snapshot needs --output");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        if (crossValidate > 0) {
+            crossValidate(input == null ? "-" : input, negatives, crossValidate, threads, output);
+            return;
+        }
+
+        FSA fsa = new FSA(offHeap);
+        fsa.setStateBudget(stateBudget);
+        try {
+            if (gui && input == null) {
+                for (String sentence : sentences) {
+                    fsa.ingestSentence(sentence);
+                }
+            } else {
+                ingest(fsa, input == null ? "-" : input, chunkSize, threads, sorted);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("cannot read " + input + ": " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        if (gui) {
+            generateGraphView(fsa);
+            return;
+        }
+
+        int statesBefore = fsa.getStateCount();
+        int transitionsBefore = fsa.getTransitionCount();
+        LearningSummary summary = fsa.learn();
+        try {
+            if (format.equals("snapshot")) {
+                fsa.writeSnapshot(Paths.get(output));
+            } else {
+                try (Writer out = output == null
+                        ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                        : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+                    if (format.equals("dot")) {
+                        fsa.writeDot(out);
+                    } else {
+                        out.write("prefix tree states: " + statesBefore + System.lineSeparator());
+                        out.write("prefix tree transitions: " + transitionsBefore + System.lineSeparator());
+                        out.write("states: " + fsa.getStateCount() + System.lineSeparator());
+                        out.write("transitions: " + fsa.getTransitionCount() + System.lineSeparator());
+                        out.write("labels: " + fsa.getSymbolTable().size() + System.lineSeparator());
+                        out.write("group merges: " + summary.getGroupMerges() + System.lineSeparator());
+                        out.write("learning time ms: " + summary.getWallTimeNanos() / 1_000_000
+                                + System.lineSeparator());
+                        out.write("memory bytes: " + fsa.memoryFootprint() + System.lineSeparator());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("cannot write " + (output == null ? "output" : output) + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void crossValidate(String input, String negatives, int folds, int threads, String output) {
+        CrossValidationReport report;
+        try {
+            CrossValidation validation = new CrossValidation(readLines(input),
+                    negatives == null ? new ArrayList<>() : readLines(negatives), folds);
+            validation.setThreads(threads);
+            report = validation.run();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("cannot read corpus: " + e.getMessage());
+            System.exit(1);
+            return;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        try (Writer out = output == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+            for (FoldResult fold : report.getFolds()) {
+                out.write(String.format("fold %d: training %d, states %d, precision %.4f, recall %.4f, "
+                        + "learning time ms %d, peak memory bytes %d%n", fold.getFold(),
+                        fold.getTrainingSentences(), fold.getStates(), fold.getPrecision(), fold.getRecall(),
+                        fold.getLearningNanos() / 1_000_000, fold.getPeakBytes()));
+            }
+            out.write(String.format("precision: %.4f%n", report.getPrecision()));
+            out.write(String.format("recall: %.4f%n", report.getRecall()));
+            out.write("wall time ms: " + report.getWallTimeNanos() / 1_000_000 + System.lineSeparator());
+        } catch (IOException e) {
+            System.err.println("cannot write " + (output == null ? "output" : output) + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // non-empty lines of a file, or of stdin for -
+    private static List<String> readLines(String input) throws IOException {
+        try (BufferedReader in = input.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8)) {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        }
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        }
+        return args[i];
+    }
+
+    private static int positive(String[] args, int i) {
+        String value = value(args, i);
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(args[i - 1] + " needs a positive number, not " + value);
+    }
+
+    // a single-threaded file read maps the file; otherwise lines are read
+    // and added chunkSize at a time, or streamed one by one if sorted
+    private static void ingest(FSA fsa, String input, int chunkSize, int threads, boolean sorted)
+            throws IOException {
+        if (!input.equals("-") && threads == 1 && !sorted) {
+            fsa.ingestFile(Paths.get(input));
+            return;
+        }
+        try (BufferedReader in = input.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8)) {
+            if (sorted) {
+                Stream<String> lines = in.lines().filter(line -> !line.isEmpty());
+                Iterable<String> sentences = lines::iterator;
+                fsa.ingestSorted(sentences);
+                return;
+            }
+            // one pool serves every chunk
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                List<String> chunk = new ArrayList<>();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    chunk.add(line);
+                    if (chunk.size() == chunkSize) {
+                        fsa.ingestAll(chunk, pool);
+                        chunk.clear();
+                    }
+                }
+                fsa.ingestAll(chunk, pool);
+            } finally {
+                pool.shutdown();
+            }
         }
-        
-        generateGraphView(fsa);
     }
     
+    private static final Dimension LAYOUT_SIZE = new Dimension(650, 650);
+    private static final int LAYOUT_STEPS = 300;
+    private static final int SEEDED_LAYOUT_STEPS = 60;
+    // above this many states only the part closest to the start is drawn
+    private static final int DETAIL_BUDGET = 500;
+    // merge levels the viewer can step back through; older checkpoints are released
+    private static final int ROLLBACK_LEVELS = 32;
+
     private static void generateGraphView(FSA fsa) {
-        Layout<FSANode, FSAEdge> layout = new ISOMLayout<FSANode, FSAEdge>(fsa.getVisualGraph());
-        layout.setSize(new Dimension(650, 650));
+        GraphPatcher patcher = new GraphPatcher(fsa);
+        Map<Integer, Point2D> positions = new HashMap<>();
+        AtomicReference<Set<FSANode>> collapsed = new AtomicReference<Set<FSANode>>(new HashSet<FSANode>());
+        Layout<FSANode, FSAEdge> layout = new StaticLayout<FSANode, FSAEdge>(
+                new DirectedSparseMultigraph<FSANode, FSAEdge>(), LAYOUT_SIZE);
         VisualizationViewer<FSANode,FSAEdge> v = new VisualizationViewer<FSANode,FSAEdge>(layout);
         v.setPreferredSize(new Dimension(700,700)); //Sets the viewing area size
         
         Transformer<FSANode,Paint> vertexColor = new Transformer<FSANode,Paint>() {
             public Paint transform(FSANode node) {
+                if (collapsed.get().contains(node)) return Color.LIGHT_GRAY;
                 if(node.isAccepting()) return Color.GREEN;
                 if (node.getID().startsWith("0") || node.getID().contains(",0")) { //|| node.getID().endsWith("0")) {
                     return Color.BLUE;
@@ -76,6 +361,19 @@ public class Main {
         DefaultModalGraphMouse<FSANode, FSAEdge> gm = new DefaultModalGraphMouse<FSANode, FSAEdge>();
         gm.setMode(ModalGraphMouse.Mode.TRANSFORMING);
         v.setGraphMouse(gm); 
+
+        JFrame frame2 = new JFrame("Simple Graph View");
+        // merging, patching and layout all run here, off the event thread;
+        // a key press while a step is still running is ignored
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        AtomicBoolean busy = new AtomicBoolean(true);
+        // checkpoints of the latest merge levels, only used on the worker
+        List<Integer> levels = new ArrayList<>();
+        int[] level = {0};
+        worker.execute(() -> {
+            levels.add(fsa.checkpoint());
+            refresh(patcher, positions, collapsed, v, frame2, busy, LAYOUT_STEPS);
+        });
         v.addKeyListener(new KeyListener() {
 
             @Override
@@ -83,11 +381,27 @@ public class Main {
 
             @Override
             public void keyPressed(KeyEvent e) {
-                fsa.merge();
-                Layout<FSANode, FSAEdge> newLayout = new ISOMLayout<FSANode, FSAEdge>(fsa.getVisualGraph());
-                v.setGraphLayout(newLayout);
-                v.getRenderContext().setVertexFillPaintTransformer(vertexColor);
-                v.repaint();
+                boolean back = e.getKeyCode() == KeyEvent.VK_LEFT || e.getKeyCode() == KeyEvent.VK_BACK_SPACE;
+                if (busy.compareAndSet(false, true)) {
+                    worker.execute(() -> {
+                        if (back) {
+                            if (level[0] > 0) {
+                                fsa.rollback(levels.get(--level[0]));
+                            }
+                        } else if (level[0] + 1 < levels.size()) {
+                            fsa.rollback(levels.get(++level[0]));
+                        } else {
+                            fsa.merge();
+                            levels.add(fsa.checkpoint());
+                            level[0]++;
+                            if (levels.size() > ROLLBACK_LEVELS) {
+                                fsa.releaseCheckpoint(levels.remove(0));
+                                level[0]--;
+                            }
+                        }
+                        refresh(patcher, positions, collapsed, v, frame2, busy, SEEDED_LAYOUT_STEPS);
+                    });
+                }
             }
 
             @Override
@@ -95,11 +409,64 @@ public class Main {
             
         });
         
-        JFrame frame2 = new JFrame("Simple Graph View");
         frame2.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame2.getContentPane().add(v); 
         frame2.pack();
         frame2.setVisible(true); 
     }
+
+    // patches the graph with the latest merges and lays it out again,
+    // starting every state that was already drawn from its old position
+    private static void refresh(GraphPatcher patcher, Map<Integer, Point2D> positions,
+            AtomicReference<Set<FSANode>> collapsed, VisualizationViewer<FSANode, FSAEdge> v, JFrame frame,
+            AtomicBoolean busy, int steps) {
+        patcher.flush();
+        Set<FSANode> hidden = new HashSet<>();
+        DirectedSparseMultigraph<FSANode, FSAEdge> visible = patcher.visibleGraph(DETAIL_BUDGET, hidden);
+        Random random = new Random();
+        FRLayout<FSANode, FSAEdge> layout = new FRLayout<FSANode, FSAEdge>(visible, LAYOUT_SIZE);
+        layout.setInitializer(new Transformer<FSANode, Point2D>() {
+            public Point2D transform(FSANode node) {
+                Point2D position = positions.get(node.getState());
+                if (position == null) {
+                    for (FSANode previous : visible.getPredecessors(node)) {
+                        position = positions.get(previous.getState());
+                        if (position != null) {
+                            break;
+                        }
+                    }
+                }
+                if (position == null) {
+                    return new Point2D.Double(random.nextDouble() * LAYOUT_SIZE.width,
+                            random.nextDouble() * LAYOUT_SIZE.height);
+                }
+                return new Point2D.Double(position.getX() + random.nextDouble() * 10 - 5,
+                        position.getY() + random.nextDouble() * 10 - 5);
+            }
+        });
+        layout.setMaxIterations(steps);
+        layout.initialize();
+        while (!layout.done()) {
+            layout.step();
+        }
+        Map<FSANode, Point2D> placed = new HashMap<>();
+        for (FSANode node : visible.getVertices()) {
+            Point2D position = new Point2D.Double(layout.getX(node), layout.getY(node));
+            placed.put(node, position);
+            positions.put(node.getState(), position);
+        }
+        int total = patcher.getGraph().getVertexCount();
+        SwingUtilities.invokeLater(() -> {
+            collapsed.set(hidden);
+            v.setGraphLayout(new StaticLayout<FSANode, FSAEdge>(visible, new Transformer<FSANode, Point2D>() {
+                public Point2D transform(FSANode node) {
+                    return placed.get(node);
+                }
+            }, LAYOUT_SIZE));
+            v.repaint();
+            frame.setTitle("Simple Graph View - " + visible.getVertexCount() + " of " + total + " states");
+            busy.set(false);
+        });
+    }
     
 }
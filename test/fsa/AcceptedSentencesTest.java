@@ -0,0 +1,68 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class AcceptedSentencesTest {
+
+    @Test
+    void listsWhatItCounts() {
+        CompiledDFA dfa = learned(Languages.corpus(6, 30, 3, 4)).compile();
+        for (int maxLength = 0; maxLength <= 6; maxLength++) {
+            List<int[]> sentences = dfa.acceptedSentences(maxLength).collect(Collectors.toList());
+            assertEquals(dfa.countAccepted(maxLength), BigInteger.valueOf(sentences.size()));
+            for (int[] sentence : sentences) {
+                assertTrue(sentence.length <= maxLength);
+                assertTrue(dfa.accepts(sentence));
+            }
+        }
+    }
+
+    @Test
+    void ordersByLengthThenTokens() {
+        CompiledDFA dfa = learned(Languages.corpus(12, 30, 3, 4)).compile();
+        SymbolTable symbols = dfa.getSymbolTable();
+        List<int[]> sentences = dfa.acceptedSentences(5).collect(Collectors.toList());
+        for (int i = 1; i < sentences.size(); i++) {
+            int[] previous = sentences.get(i - 1);
+            int[] current = sentences.get(i);
+            int order = Integer.compare(previous.length, current.length);
+            for (int t = 0; order == 0 && t < current.length; t++) {
+                order = symbols.label(previous[t]).compareTo(symbols.label(current[t]));
+            }
+            assertTrue(order < 0, Arrays.toString(previous) + " / " + Arrays.toString(current));
+        }
+    }
+
+    @Test
+    void parallelStreamsListTheSameSentences() {
+        CompiledDFA dfa = learned(Languages.corpus(13, 30, 4, 5)).compile();
+        List<String> sequential = dfa.acceptedSentences(7).map(Arrays::toString).collect(Collectors.toList());
+        List<String> parallel = dfa.acceptedSentences(7).parallel().map(Arrays::toString)
+                .collect(Collectors.toList());
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    void rejectsNegativeLengths() {
+        CompiledDFA dfa = learned(List.of("a")).compile();
+        assertThrows(IllegalArgumentException.class, () -> dfa.countAccepted(-1));
+    }
+
+    private static FSA learned(List<String> corpus) {
+        FSA fsa = new FSA();
+        for (String sentence : corpus) {
+            fsa.ingestSentence(sentence);
+        }
+        fsa.learn();
+        return fsa;
+    }
+}
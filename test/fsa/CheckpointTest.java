@@ -0,0 +1,67 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CheckpointTest {
+
+    @Test
+    void rollbackRestoresEveryLevel() {
+        List<String> corpus = Languages.corpus(2, 40, 4, 6);
+        FSA fsa = new FSA();
+        for (String sentence : corpus) {
+            fsa.ingestSentence(sentence);
+        }
+        List<Integer> ids = new ArrayList<>();
+        List<Integer> states = new ArrayList<>();
+        List<CompiledDFA> languages = new ArrayList<>();
+        for (int level = 0; level < 6; level++) {
+            ids.add(fsa.checkpoint());
+            states.add(fsa.getStateCount());
+            languages.add(fsa.compile());
+            fsa.merge();
+        }
+        for (int level = ids.size() - 1; level >= 0; level--) {
+            fsa.rollback(ids.get(level));
+            assertEquals(states.get(level), fsa.getStateCount(), "states at level " + level);
+            assertTrue(Languages.equivalent(languages.get(level), fsa.compile()), "language at level " + level);
+        }
+    }
+
+    @Test
+    void learningAfterRollbackRepeatsItself() {
+        List<String> corpus = Languages.corpus(9, 40, 4, 6);
+        FSA fsa = new FSA();
+        for (String sentence : corpus) {
+            fsa.ingestSentence(sentence);
+        }
+        int tree = fsa.checkpoint();
+        fsa.learn();
+        CompiledDFA learned = fsa.compile();
+        int states = fsa.getStateCount();
+        fsa.rollback(tree);
+        for (String sentence : corpus) {
+            assertTrue(fsa.accepts(sentence));
+        }
+        fsa.learn();
+        assertEquals(states, fsa.getStateCount());
+        assertTrue(Languages.equivalent(learned, fsa.compile()));
+    }
+
+    @Test
+    void releasedCheckpointsAreGone() {
+        FSA fsa = new FSA();
+        fsa.ingestSentence("a b");
+        int id = fsa.checkpoint();
+        fsa.releaseCheckpoint(id);
+        assertThrows(IllegalArgumentException.class, () -> fsa.rollback(id));
+        assertThrows(IllegalArgumentException.class, () -> fsa.releaseCheckpoint(id));
+        assertThrows(IllegalArgumentException.class, () -> fsa.rollback(id + 1));
+    }
+}
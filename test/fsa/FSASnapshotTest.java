@@ -0,0 +1,127 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class FSASnapshotTest {
+
+    @Test
+    void snapshotsOfTheLiveAutomatonStayPut() {
+        FSA fsa = new FSA();
+        fsa.ingestSentence("a b");
+        FSASnapshot snapshot = fsa.snapshot();
+        fsa.ingestSentence("c b");
+        fsa.learn();
+        assertTrue(snapshot.accepts("a b"));
+        assertFalse(snapshot.accepts("c b"));
+        assertArrayEquals(new boolean[] {true, true}, fsa.compile().acceptAll(List.of("a b", "c b")));
+    }
+
+    @Test
+    void readersShareSnapshotsWhileTheWriterLearns() throws Exception {
+        readWhileWriting(false);
+    }
+
+    @Test
+    void readersShareOffHeapSnapshotsWhileTheWriterLearns() throws Exception {
+        readWhileWriting(true);
+    }
+
+    // the writer ingests, learns, ingests more and minimizes, publishing a
+    // snapshot with the answers the automaton gave at that moment after
+    // each step; the readers keep querying every snapshot published so far
+    private static void readWhileWriting(boolean offHeap) throws Exception {
+        List<String> probes = Languages.corpus(21, 200, 4, 5);
+        List<Expected> published = new CopyOnWriteArrayList<>();
+        ExecutorService readers = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<Integer>> reads = new ArrayList<>();
+            FSA fsa = new FSA(offHeap);
+            publish(fsa, probes, published);
+            for (int r = 0; r < 3; r++) {
+                reads.add(readers.submit(() -> {
+                    int checked = 0;
+                    boolean done;
+                    do {
+                        done = published.get(published.size() - 1) == null;
+                        for (Expected expected : published) {
+                            if (expected != null) {
+                                expected.check(probes);
+                                checked++;
+                            }
+                        }
+                    } while (!done);
+                    return checked;
+                }));
+            }
+            for (long seed = 0; seed < 3; seed++) {
+                for (String sentence : Languages.corpus(seed, 300, 4, 5)) {
+                    fsa.ingestSentence(sentence);
+                }
+                publish(fsa, probes, published);
+                fsa.learn();
+                publish(fsa, probes, published);
+            }
+            fsa.minimize();
+            publish(fsa, probes, published);
+            published.add(null);
+            for (Future<Integer> read : reads) {
+                assertTrue(read.get() >= published.size() - 1);
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    private static void publish(FSA fsa, List<String> probes, List<Expected> published) throws IOException {
+        FSASnapshot snapshot = fsa.snapshot();
+        boolean[] accepted = new boolean[probes.size()];
+        for (int i = 0; i < accepted.length; i++) {
+            accepted[i] = fsa.accepts(probes.get(i));
+        }
+        StringBuilder dot = new StringBuilder();
+        fsa.writeDot(dot);
+        published.add(new Expected(snapshot, fsa.getStateCount(), fsa.getTransitionCount(), accepted,
+                dot.toString()));
+    }
+
+    private static final class Expected {
+        private final FSASnapshot snapshot;
+        private final int states;
+        private final int transitions;
+        private final boolean[] accepted;
+        private final String dot;
+
+        Expected(FSASnapshot snapshot, int states, int transitions, boolean[] accepted, String dot) {
+            this.snapshot = snapshot;
+            this.states = states;
+            this.transitions = transitions;
+            this.accepted = accepted;
+            this.dot = dot;
+        }
+
+        void check(List<String> probes) throws IOException {
+            assertEquals(states, snapshot.getStateCount());
+            assertEquals(transitions, snapshot.getTransitionCount());
+            for (int i = 0; i < accepted.length; i++) {
+                assertEquals(accepted[i], snapshot.accepts(probes.get(i)), probes.get(i));
+            }
+            assertArrayEquals(accepted, snapshot.compile().acceptAll(probes));
+            StringBuilder out = new StringBuilder();
+            snapshot.writeDot(out);
+            assertEquals(dot, out.toString());
+        }
+    }
+}
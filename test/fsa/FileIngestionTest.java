@@ -0,0 +1,47 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileIngestionTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void linesAreTokenizedLikeSentences() throws IOException {
+        List<String> lines = List.of("a b", "c d ", "   ", "e\r", "a  b");
+        Path file = dir.resolve("corpus.txt");
+        Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        FSA fromFile = new FSA();
+        fromFile.ingestFile(file);
+        FSA fromSentences = new FSA(fromFile.getSymbolTable(), false);
+        for (String line : List.of("a b", "c d ", "   ", "e", "a  b")) {
+            fromSentences.ingestSentence(line);
+        }
+        assertEquals(fromSentences.getStateCount(), fromFile.getStateCount());
+        assertTrue(Languages.equivalent(fromSentences.compile(), fromFile.compile()));
+        assertTrue(fromFile.accepts("   "));
+    }
+
+    @Test
+    void emptyLinesAreSkipped() throws IOException {
+        Path file = dir.resolve("corpus.txt");
+        Files.write(file, "a\n\n\r\nb\n".getBytes(StandardCharsets.UTF_8));
+        FSA fsa = new FSA();
+        fsa.ingestFile(file);
+        assertEquals(3, fsa.getStateCount());
+        assertFalse(fsa.accepts("   "));
+        assertFalse(fsa.accepts(""));
+    }
+}
@@ -0,0 +1,128 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FrequencyTest {
+
+    @Test
+    void countsSentencesThroughEveryState() {
+        List<String> corpus = Languages.corpus(14, 500, 4, 5);
+        FSA fsa = new FSA();
+        fsa.countFrequencies();
+        for (String sentence : corpus) {
+            fsa.ingestSentence(sentence);
+        }
+        int start = fsa.getStartState();
+        assertEquals(corpus.size(), fsa.getStateFrequency(start));
+        int leaving = fsa.getFinalFrequency(start);
+        for (int label = 0; label < fsa.getSymbolTable().size(); label++) {
+            leaving += fsa.getTransitionFrequency(start, label);
+        }
+        assertEquals(corpus.size(), leaving);
+
+        FSA parallel = new FSA();
+        parallel.countFrequencies();
+        parallel.ingestAll(corpus, 4);
+        assertEquals(corpus.size(), parallel.getStateFrequency(parallel.getStartState()));
+    }
+
+    @Test
+    void countingIsOffByDefault() {
+        FSA fsa = new FSA();
+        fsa.ingestSentence("a b");
+        assertThrows(IllegalStateException.class, () -> fsa.getStateFrequency(fsa.getStartState()));
+        assertThrows(IllegalStateException.class, fsa::countFrequencies);
+        assertThrows(IllegalStateException.class, () -> fsa.setStateBudget(10));
+    }
+
+    @Test
+    void stateBudgetKeepsTheFrequentSentences() {
+        FSA fsa = new FSA();
+        fsa.setStateBudget(500);
+        Random random = new Random(3);
+        List<String> frequent = List.of("f0 x y z", "f1 x y z", "f2 x y z");
+        int largest = 0;
+        for (int i = 0; i < 20000; i++) {
+            String sentence = random.nextInt(4) == 0 ? frequent.get(random.nextInt(frequent.size()))
+                    : "w" + random.nextInt(50) + " " + random.nextInt(1000) + " " + random.nextInt(1000);
+            fsa.ingestSentence(sentence);
+            largest = Math.max(largest, fsa.getStateCount());
+        }
+        assertTrue(largest <= 500, "largest tree had " + largest + " states");
+        for (String sentence : frequent) {
+            assertTrue(fsa.accepts(sentence), sentence);
+        }
+    }
+
+    @Test
+    void prunedCountsComeBackNeverTooLow() {
+        FSA fsa = new FSA();
+        fsa.setStateBudget(300);
+        Random random = new Random(7);
+        Map<String, Integer> prefixes = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String sentence = "w" + random.nextInt(8) + " " + random.nextInt(40) + " " + random.nextInt(40);
+            fsa.ingestSentence(sentence);
+            String[] tokens = sentence.split(" ");
+            for (int length = 1; length <= tokens.length; length++) {
+                prefixes.merge(String.join(" ", Arrays.copyOf(tokens, length)), 1, Integer::sum);
+            }
+        }
+        // every path still in the tree counts at least the sentences that took it
+        for (Map.Entry<String, Integer> prefix : prefixes.entrySet()) {
+            int state = fsa.getStartState();
+            int count = 0;
+            for (String token : prefix.getKey().split(" ")) {
+                int label = fsa.getSymbolTable().lookup(token);
+                count = state == CompiledDFA.NONE ? 0 : fsa.getTransitionFrequency(state, label);
+                state = state == CompiledDFA.NONE ? state : fsa.getNextState(state, label);
+            }
+            if (state != CompiledDFA.NONE) {
+                assertTrue(count >= prefix.getValue(), prefix.getKey() + " counted " + count + " of "
+                        + prefix.getValue());
+            }
+        }
+    }
+
+    @Test
+    void alergiaTellsStatesApartByTheirSuffixes() {
+        FSA fsa = new FSA();
+        fsa.countFrequencies();
+        Random random = new Random(5);
+        for (int i = 0; i < 4000; i++) {
+            // after a and b the same distribution; after e, c is followed by
+            // more d and stops less often
+            String suffix = random.nextInt(3) == 0 ? "c" : random.nextBoolean() ? "c d" : "c d d";
+            fsa.ingestSentence((random.nextBoolean() ? "a " : "b ") + suffix);
+            fsa.ingestSentence("e " + (random.nextInt(10) == 0 ? "c" : "c d d d d"));
+        }
+        int start = fsa.getStartState();
+        SymbolTable symbols = fsa.getSymbolTable();
+        int a = fsa.getNextState(start, symbols.lookup("a"));
+        int b = fsa.getNextState(start, symbols.lookup("b"));
+        int e = fsa.getNextState(start, symbols.lookup("e"));
+        assertTrue(fsa.isAlergiaCompatible(a, b, 0.05));
+        assertTrue(fsa.isAlergiaCompatible(a, a, 0.05));
+        // a and e both go on to c every time, so only the states after c differ
+        assertFalse(fsa.isAlergiaCompatible(a, e, 0.05));
+        assertFalse(fsa.isAlergiaCompatible(e, b, 0.05));
+        assertFalse(fsa.isAlergiaCompatible(start, a, 0.05));
+        assertThrows(IllegalArgumentException.class, () -> fsa.isAlergiaCompatible(a, b, 0));
+        assertThrows(IllegalArgumentException.class, () -> fsa.isAlergiaCompatible(a, b, 1.5));
+
+        FSA uncounted = new FSA();
+        uncounted.ingestSentence("a");
+        assertThrows(IllegalStateException.class, () -> uncounted.isAlergiaCompatible(0, 1, 0.05));
+    }
+}
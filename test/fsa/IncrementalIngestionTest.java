@@ -0,0 +1,80 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class IncrementalIngestionTest {
+
+    @Test
+    void learningMoreEqualsLearningAllAtOnce() {
+        for (long seed = 0; seed < 200; seed++) {
+            List<String> corpus = Languages.corpus(seed, 4 + (int) (seed % 10), 3, 5);
+            int half = corpus.size() / 2;
+            FSA incremental = new FSA();
+            for (String sentence : corpus.subList(0, half)) {
+                incremental.ingestSentence(sentence);
+            }
+            incremental.learn();
+            for (String sentence : corpus.subList(half, corpus.size())) {
+                incremental.ingestSentence(sentence);
+            }
+            incremental.learn();
+            FSA fresh = new FSA();
+            for (String sentence : corpus) {
+                fresh.ingestSentence(sentence);
+            }
+            fresh.learn();
+            assertEquals(fresh.getStateCount(), incremental.getStateCount(), "states for seed " + seed);
+            assertTrue(Languages.equivalent(fresh.compile(), incremental.compile()), "language for seed " + seed);
+        }
+    }
+
+    @Test
+    void steppingAfterMoreSentencesEqualsLearningAllAtOnce() {
+        for (long seed = 0; seed < 300; seed++) {
+            List<String> corpus = Languages.corpus(seed, 4 + (int) (seed % 10), 3, 5);
+            int half = corpus.size() / 2;
+            FSA incremental = new FSA();
+            for (String sentence : corpus.subList(0, half)) {
+                incremental.ingestSentence(sentence);
+            }
+            incremental.learn();
+            for (String sentence : corpus.subList(half, corpus.size())) {
+                incremental.ingestSentence(sentence);
+            }
+            stepToTheEnd(incremental);
+            FSA fresh = new FSA(incremental.getSymbolTable(), false);
+            for (String sentence : corpus) {
+                fresh.ingestSentence(sentence);
+            }
+            fresh.learn();
+            assertEquals(fresh.getStateCount(), incremental.getStateCount(), "states for seed " + seed);
+            assertTrue(Languages.equivalent(fresh.compile(), incremental.compile()), "language for seed " + seed);
+        }
+    }
+
+    @Test
+    void steppingReachesTheFinalStatesOlderSources() {
+        FSA fsa = new FSA();
+        fsa.ingestSentence("a b");
+        fsa.learn();
+        fsa.ingestSentence("c b");
+        stepToTheEnd(fsa);
+        assertEquals(3, fsa.getStateCount());
+    }
+
+    // a merge step that leaves conflicts must still make progress
+    private static void stepToTheEnd(FSA fsa) {
+        int states = Integer.MAX_VALUE;
+        int idle = 0;
+        while (fsa.merge()) {
+            idle = fsa.getStateCount() < states ? 0 : idle + 1;
+            states = Math.min(states, fsa.getStateCount());
+            assertTrue(idle < 100, "merging stalled at " + states + " states");
+        }
+    }
+}
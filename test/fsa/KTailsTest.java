@@ -0,0 +1,94 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class KTailsTest {
+
+    @Test
+    void zeroTailsOnlySeparateAcceptingStates() {
+        // 0 -a-> 1 -b-> 2 and 0 -c-> 3 -b-> 4 with 1, 2 and 4 accepting:
+        // {0, 3} and {1, 2, 4} merge into c*(a|b)b*
+        FSA fsa = tree("a b", "c b", "a");
+        assertSummary(fsa.mergeKTails(0), 2, 3);
+        assertEquals(2, fsa.getStateCount());
+        assertLanguage(fsa, new int[] {1}, "0 c 0", "0 a 1", "0 b 1", "1 b 1");
+    }
+
+    @Test
+    void oneTailMergesStatesThatLookAlikeOneStepAhead() {
+        // 0 -a-> 1 -b-> 2 -c-> 3 and 0 -d-> 4 -b-> 5 -e-> 6: 1 and 4 both
+        // read b to a non-accepting state, so they merge along with the
+        // final states 3 and 6, and the corpus generalizes to (a|d) b (c|e)
+        FSA fsa = tree("a b c", "d b e");
+        assertSummary(fsa.mergeKTails(1), 2, 2);
+        assertEquals(5, fsa.getStateCount());
+        assertLanguage(fsa, new int[] {3}, "0 a 1", "0 d 1", "1 b 2", "2 c 3", "2 e 3");
+    }
+
+    @Test
+    void twoTailsTellApartWhatFollowsTwoStepsAhead() {
+        // two steps ahead 1 reads b c and 4 reads b e, so only the final
+        // states merge and the language stays the corpus
+        FSA fsa = tree("a b c", "d b e");
+        assertSummary(fsa.mergeKTails(2), 1, 1);
+        assertEquals(6, fsa.getStateCount());
+        assertLanguage(fsa, new int[] {5}, "0 a 1", "1 b 2", "2 c 5", "0 d 3", "3 b 4", "4 e 5");
+    }
+
+    @Test
+    void zeroLeadersOnlySeparateTheStartState() {
+        // 0 -a-> 1 -b-> 2, 1 -c-> 3 and 0 -d-> 4 -c-> 5: every state but
+        // the start merges into one accepting state, (a|d)(b|c)*
+        FSA fsa = tree("a b", "a c", "d c");
+        assertSummary(fsa.mergeKLeaders(0), 1, 4);
+        assertEquals(2, fsa.getStateCount());
+        assertLanguage(fsa, new int[] {1}, "0 a 1", "0 d 1", "1 b 1", "1 c 1");
+    }
+
+    @Test
+    void leadersMergeLessAsKGrows() {
+        // with one label of past, 3 and 5 are both entered on c from a
+        // state other than the start, so they merge
+        FSA one = tree("a b", "a c", "d c");
+        assertSummary(one.mergeKLeaders(1), 1, 1);
+        assertEquals(5, one.getStateCount());
+        assertLanguage(one, new int[] {2, 4}, "0 a 1", "1 b 2", "1 c 2", "0 d 3", "3 c 4");
+
+        // with two, 3 is entered by a c and 5 by d c
+        FSA two = tree("a b", "a c", "d c");
+        assertSummary(two.mergeKLeaders(2), 0, 0);
+        assertEquals(6, two.getStateCount());
+        assertLanguage(two, new int[] {2, 4}, "0 a 1", "1 b 2", "1 c 2", "0 d 3", "3 c 4");
+    }
+
+    @Test
+    void largeKOnlyMergesStatesWithTheSameFuture() {
+        // once k exceeds the longest sentence, only states with the same
+        // future merge: here the leaves, which all accept and end
+        FSA fsa = tree("a b c", "d b e");
+        fsa.mergeKTails(10);
+        assertEquals(6, fsa.getStateCount());
+        assertTrue(fsa.accepts("a b c") && fsa.accepts("d b e") && !fsa.accepts("a b e"));
+    }
+
+    private static FSA tree(String... sentences) {
+        FSA fsa = new FSA();
+        for (String sentence : sentences) {
+            fsa.ingestSentence(sentence);
+        }
+        return fsa;
+    }
+
+    private static void assertSummary(LearningSummary summary, int groupMerges, int statesCollapsed) {
+        assertEquals(groupMerges, summary.getGroupMerges(), "group merges");
+        assertEquals(statesCollapsed, summary.getStatesCollapsed(), "states collapsed");
+    }
+
+    private static void assertLanguage(FSA fsa, int[] accepting, String... edges) {
+        CompiledDFA expected = Languages.automaton(fsa.getSymbolTable(), accepting, edges);
+        assertTrue(Languages.equivalent(expected, fsa.compile()), "language");
+    }
+}
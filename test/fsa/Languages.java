@@ -0,0 +1,254 @@
+package fsa;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Corpora and reference results for the tests: random sentences, the
+ * zero-reversible closure computed the slow and obvious way, and language
+ * equivalence of two compiled automata by walking their product.
+ */
+final class Languages {
+
+    private Languages() {
+    }
+
+    /** {@code count} sentences of 0 to {@code maxLength} tokens drawn from {@code alphabet} tokens. */
+    static List<String> corpus(long seed, int count, int alphabet, int maxLength) {
+        Random random = new Random(seed);
+        List<String> sentences = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int length = random.nextInt(maxLength + 1);
+            StringBuilder sentence = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                if (j > 0) {
+                    sentence.append(' ');
+                }
+                sentence.append('t').append(random.nextInt(alphabet));
+            }
+            sentences.add(sentence.toString());
+        }
+        return sentences;
+    }
+
+    /** Sorted token by token as UTF-8 bytes, without duplicates, as ingestSorted wants them. */
+    static List<String> sorted(List<String> sentences) {
+        Comparator<String[]> byTokens = (a, b) -> {
+            for (int i = 0; i < Math.min(a.length, b.length); i++) {
+                int c = Arrays.compareUnsigned(a[i].getBytes(StandardCharsets.UTF_8),
+                        b[i].getBytes(StandardCharsets.UTF_8));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return Integer.compare(a.length, b.length);
+        };
+        List<String[]> tokenized = new ArrayList<>();
+        for (String sentence : new HashSet<>(sentences)) {
+            tokenized.add(sentence.isEmpty() ? new String[0] : sentence.split(" "));
+        }
+        tokenized.sort(byTokens);
+        List<String> result = new ArrayList<>();
+        for (String[] tokens : tokenized) {
+            result.add(String.join(" ", tokens));
+        }
+        return result;
+    }
+
+    /**
+     * The zero-reversible automaton of {@code sentences}: the prefix tree
+     * with all accepting states merged, then any two states merged that one
+     * state reaches, or that reach one state, on the same label, until
+     * there are none left.
+     */
+    static CompiledDFA zeroReversible(List<String> sentences, SymbolTable symbols) {
+        Map<Long, Integer> children = new HashMap<>();
+        List<int[]> edges = new ArrayList<>();
+        Set<Integer> accepting = new HashSet<>();
+        int states = 1;
+        for (String sentence : sentences) {
+            int state = 0;
+            // tokenized like FSA.ingestSentence
+            for (String token : sentence.split(" ")) {
+                int label = symbols.intern(token);
+                Integer child = children.get(key(state, label));
+                if (child == null) {
+                    child = states++;
+                    children.put(key(state, label), child);
+                    edges.add(new int[] {state, label, child});
+                }
+                state = child;
+            }
+            accepting.add(state);
+        }
+
+        int[] parent = new int[states];
+        for (int s = 0; s < states; s++) {
+            parent[s] = s;
+        }
+        int someFinal = accepting.iterator().next();
+        for (int s : accepting) {
+            union(parent, someFinal, s);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Map<Long, Integer> forward = new HashMap<>();
+            Map<Long, Integer> backward = new HashMap<>();
+            for (int[] edge : edges) {
+                int source = find(parent, edge[0]);
+                int target = find(parent, edge[2]);
+                Integer other = forward.putIfAbsent(key(source, edge[1]), target);
+                if (other != null && find(parent, other) != target) {
+                    changed |= union(parent, other, target);
+                }
+                other = backward.putIfAbsent(key(target, edge[1]), source);
+                if (other != null && find(parent, other) != source) {
+                    changed |= union(parent, other, source);
+                }
+            }
+        }
+
+        int[] id = new int[states];
+        Arrays.fill(id, -1);
+        int classes = 0;
+        for (int s = 0; s < states; s++) {
+            if (id[find(parent, s)] < 0) {
+                id[find(parent, s)] = classes++;
+            }
+        }
+        Map<Long, Integer> transitions = new HashMap<>();
+        for (int[] edge : edges) {
+            transitions.put(key(id[find(parent, edge[0])], edge[1]), id[find(parent, edge[2])]);
+        }
+        boolean[] isAccepting = new boolean[classes];
+        for (int s : accepting) {
+            isAccepting[id[find(parent, s)]] = true;
+        }
+        return compiled(symbols, id[find(parent, 0)], classes, transitions, isAccepting);
+    }
+
+    /**
+     * The automaton with start state 0, the given accepting states and
+     * {@code edges} written as "source token target", over the tokens
+     * already in {@code symbols}.
+     */
+    static CompiledDFA automaton(SymbolTable symbols, int[] accepting, String... edges) {
+        Map<Long, Integer> transitions = new HashMap<>();
+        int states = 1;
+        for (String edge : edges) {
+            String[] parts = edge.split(" ");
+            int source = Integer.parseInt(parts[0]);
+            int target = Integer.parseInt(parts[2]);
+            transitions.put(key(source, symbols.lookup(parts[1])), target);
+            states = Math.max(states, Math.max(source, target) + 1);
+        }
+        boolean[] isAccepting = new boolean[states];
+        for (int s : accepting) {
+            isAccepting[s] = true;
+        }
+        return compiled(symbols, 0, states, transitions, isAccepting);
+    }
+
+    private static CompiledDFA compiled(SymbolTable symbols, int start, int states, Map<Long, Integer> transitions,
+            boolean[] accepting) {
+        List<Long> keys = new ArrayList<>(transitions.keySet());
+        keys.sort(null);
+        int[] offsets = new int[states + 1];
+        int[] labels = new int[keys.size()];
+        int[] targets = new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            long key = keys.get(i);
+            offsets[(int) (key >>> 32) + 1]++;
+            labels[i] = (int) key;
+            targets[i] = transitions.get(key);
+        }
+        for (int s = 0; s < states; s++) {
+            offsets[s + 1] += offsets[s];
+        }
+        long[] bits = new long[(states + 63) / 64];
+        for (int s = 0; s < states; s++) {
+            if (accepting[s]) {
+                bits[s >>> 6] |= 1L << s;
+            }
+        }
+        return new CompiledDFA(symbols, start, IntBuffer.wrap(offsets), IntBuffer.wrap(labels),
+                IntBuffer.wrap(targets), LongBuffer.wrap(bits));
+    }
+
+    /**
+     * Whether both automata accept exactly the same sentences. Labels are
+     * matched by name, so the automata need not share a symbol table.
+     */
+    static boolean equivalent(CompiledDFA a, CompiledDFA b) {
+        SymbolTable aSymbols = a.getSymbolTable();
+        SymbolTable bSymbols = b.getSymbolTable();
+        List<int[]> labels = new ArrayList<>();
+        for (int l = 0; l < aSymbols.size(); l++) {
+            labels.add(new int[] {l, bSymbols.lookup(aSymbols.label(l))});
+        }
+        for (int l = 0; l < bSymbols.size(); l++) {
+            if (aSymbols.lookup(bSymbols.label(l)) == SymbolTable.UNKNOWN) {
+                labels.add(new int[] {SymbolTable.UNKNOWN, l});
+            }
+        }
+        Set<Long> seen = new HashSet<>();
+        Queue<long[]> pending = new ArrayDeque<>();
+        pending.add(new long[] {a.getStartState(), b.getStartState()});
+        seen.add(key(a.getStartState(), b.getStartState()));
+        while (!pending.isEmpty()) {
+            long[] pair = pending.remove();
+            int x = (int) pair[0];
+            int y = (int) pair[1];
+            boolean xAccepts = x != CompiledDFA.NONE && a.isAccepting(x);
+            boolean yAccepts = y != CompiledDFA.NONE && b.isAccepting(y);
+            if (xAccepts != yAccepts) {
+                return false;
+            }
+            for (int[] label : labels) {
+                int nx = x == CompiledDFA.NONE || label[0] == SymbolTable.UNKNOWN ? CompiledDFA.NONE
+                        : a.next(x, label[0]);
+                int ny = y == CompiledDFA.NONE || label[1] == SymbolTable.UNKNOWN ? CompiledDFA.NONE
+                        : b.next(y, label[1]);
+                if ((nx != CompiledDFA.NONE || ny != CompiledDFA.NONE) && seen.add(key(nx, ny))) {
+                    pending.add(new long[] {nx, ny});
+                }
+            }
+        }
+        return true;
+    }
+
+    private static long key(int high, int low) {
+        return ((long) high << 32) | (low & 0xffffffffL);
+    }
+
+    private static int find(int[] parent, int s) {
+        while (parent[s] != s) {
+            parent[s] = parent[parent[s]];
+            s = parent[s];
+        }
+        return s;
+    }
+
+    private static boolean union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra == rb) {
+            return false;
+        }
+        parent[Math.max(ra, rb)] = Math.min(ra, rb);
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class LearnTest {
+
+    @Test
+    void learnsTheZeroReversibleClosure() {
+        for (long seed = 0; seed < 200; seed++) {
+            List<String> corpus = Languages.corpus(seed, 2 + (int) (seed % 12), 3, 5);
+            FSA fsa = new FSA();
+            for (String sentence : corpus) {
+                fsa.ingestSentence(sentence);
+            }
+            fsa.learn();
+            CompiledDFA expected = Languages.zeroReversible(corpus, fsa.getSymbolTable());
+            assertEquals(expected.getStateCount(), fsa.getStateCount(), "states for seed " + seed);
+            assertTrue(Languages.equivalent(expected, fsa.compile()), "language for seed " + seed);
+        }
+    }
+
+    @Test
+    void steppingEndsWhereLearningDoes() {
+        for (long seed = 0; seed < 200; seed++) {
+            List<String> corpus = Languages.corpus(seed, 2 + (int) (seed % 12), 3, 5);
+            FSA stepped = new FSA();
+            FSA learned = new FSA(stepped.getSymbolTable(), false);
+            for (String sentence : corpus) {
+                stepped.ingestSentence(sentence);
+                learned.ingestSentence(sentence);
+            }
+            int steps = 0;
+            while (stepped.merge()) {
+                assertTrue(++steps < 1000, "merging does not end for seed " + seed);
+            }
+            learned.learn();
+            assertEquals(learned.getStateCount(), stepped.getStateCount(), "states for seed " + seed);
+            assertTrue(Languages.equivalent(learned.compile(), stepped.compile()), "language for seed " + seed);
+        }
+    }
+
+    @Test
+    void mergesTheExampleSetsToTheirClosure() {
+        // sets 2, 8 and 11 of learn.Main, where the original merge stopped
+        // short of the zero-reversible closure
+        List<List<String>> examples = List.of(
+                List.of("a b c", "e f g", "a f g"),
+                List.of("0 1 0 1 0", "0 1 0", "1 0 1 0", "0 1 0 1", "1"),
+                List.of("0 1 1 0 0 0", "1 0 1 1 1 1 0 0 0", "0 1 1 1 1 1 1 0", "0 0 0 0 0", "0 1 0 0 0 1 0",
+                        "1 0 0 0 1 0 0 1 1 0 1", "0 0", "1 1", "0 1 1", "1 0 0"));
+        for (List<String> sentences : examples) {
+            FSA fsa = new FSA();
+            for (String sentence : sentences) {
+                fsa.ingestSentence(sentence);
+            }
+            int steps = 0;
+            while (fsa.merge()) {
+                assertTrue(++steps < 1000, "merging does not end for " + sentences);
+            }
+            CompiledDFA expected = Languages.zeroReversible(sentences, fsa.getSymbolTable());
+            assertEquals(expected.getStateCount(), fsa.getStateCount(), "states for " + sentences);
+            assertTrue(Languages.equivalent(expected, fsa.compile()), "language for " + sentences);
+        }
+    }
+
+    @Test
+    void acceptsWhatItWasTaught() {
+        List<String> corpus = Languages.corpus(7, 40, 4, 6);
+        FSA fsa = new FSA();
+        for (String sentence : corpus) {
+            fsa.ingestSentence(sentence);
+        }
+        fsa.learn();
+        CompiledDFA compiled = fsa.compile();
+        for (String sentence : corpus) {
+            assertTrue(fsa.accepts(sentence), sentence);
+            assertTrue(compiled.accepts(sentence), sentence);
+        }
+        for (String probe : Languages.corpus(8, 200, 5, 8)) {
+            assertEquals(compiled.accepts(probe), fsa.accepts(probe), probe);
+        }
+        assertFalse(fsa.accepts("unknown"));
+    }
+
+    @Test
+    void compiledHasNoTransitionsOnUnknownLabels() {
+        FSA fsa = new FSA();
+        fsa.ingestSentence("a b");
+        fsa.ingestSentence("b a");
+        CompiledDFA compiled = fsa.compile();
+        for (int state = 0; state < compiled.getStateCount(); state++) {
+            assertEquals(CompiledDFA.NONE, compiled.next(state, -1), "state " + state);
+            assertEquals(CompiledDFA.NONE, compiled.next(state, compiled.getSymbolTable().size()), "state " + state);
+        }
+    }
+
+    @Test
+    void parallelIngestionBuildsTheSamePrefixTree() {
+        // the small corpus builds every shard on the heap, the large one
+        // builds them off-heap
+        for (List<String> corpus : List.of(Languages.corpus(5, 300, 4, 5), Languages.corpus(6, 40000, 20, 10))) {
+            FSA sequential = new FSA(true);
+            for (String sentence : corpus) {
+                sequential.ingestSentence(sentence);
+            }
+            FSA parallel = new FSA(sequential.getSymbolTable(), true);
+            parallel.ingestAll(corpus, 2);
+            assertEquals(sequential.getStateCount(), parallel.getStateCount());
+            assertEquals(sequential.getTransitionCount(), parallel.getTransitionCount());
+            assertTrue(Languages.equivalent(sequential.compile(), parallel.compile()));
+        }
+    }
+
+    @Test
+    void chunksGraftedWithOnePoolLearnLikeSequential() {
+        // later chunks share prefixes with the tree the earlier ones built
+        List<String> corpus = Languages.corpus(8, 3000, 6, 6);
+        FSA sequential = new FSA();
+        for (String sentence : corpus) {
+            sequential.ingestSentence(sentence);
+        }
+        FSA chunked = new FSA(sequential.getSymbolTable(), false);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int from = 0; from < corpus.size(); from += 700) {
+                chunked.ingestAll(corpus.subList(from, Math.min(from + 700, corpus.size())), pool);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(sequential.getStateCount(), chunked.getStateCount());
+        assertEquals(sequential.getTransitionCount(), chunked.getTransitionCount());
+        sequential.learn();
+        chunked.learn();
+        assertEquals(sequential.getStateCount(), chunked.getStateCount());
+        assertTrue(Languages.equivalent(sequential.compile(), chunked.compile()));
+    }
+
+    @Test
+    void prefixTreeAcceptsExactlyTheCorpus() {
+        List<String> corpus = Languages.corpus(3, 30, 3, 4);
+        FSA fsa = new FSA();
+        for (String sentence : corpus) {
+            fsa.ingestSentence(sentence);
+        }
+        for (String probe : Languages.corpus(4, 200, 3, 4)) {
+            assertEquals(corpus.contains(probe), fsa.accepts(probe), probe);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class MergeListenerTest {
+
+    @Test
+    void countsEachLevelOfStepping() {
+        // 0 -a-> 1 -b-> 2 and 0 -c-> 3 -b-> 4: merging the final states
+        // moves 3 -b-> 4, then the sources 1 and 3 of b merge, which moves
+        // 0 -c-> 3 and leaves 3 -b-> as a copy of 1 -b->
+        List<MergeLevelStats> levels = stepped("a b", "c b");
+        assertEquals(2, levels.size());
+        assertLevel(levels.get(0), 0, 0, 1, 1, 0, 0, 4, 4);
+        assertLevel(levels.get(1), 1, 2, 1, 1, 0, 1, 3, 3);
+    }
+
+    @Test
+    void countsSelfLoops() {
+        // merging the final states 1 and 2 turns 1 -a-> 2 into a loop, then
+        // 0 and the merged state both lead into it on a
+        List<MergeLevelStats> levels = stepped("a", "a a");
+        assertEquals(2, levels.size());
+        assertLevel(levels.get(0), 0, 0, 1, 0, 1, 0, 2, 2);
+        assertLevel(levels.get(1), 1, 2, 1, 0, 0, 1, 1, 1);
+    }
+
+    @Test
+    void reportsLearningAsOneLevel() {
+        FSA fsa = new FSA();
+        fsa.ingestSentence("a b");
+        fsa.ingestSentence("c b");
+        List<MergeLevelStats> levels = new ArrayList<>();
+        fsa.setMergeListener(levels::add);
+        fsa.learn();
+        assertEquals(1, levels.size());
+        MergeLevelStats stats = levels.get(0);
+        assertEquals(0, stats.getLevel());
+        assertEquals(3, stats.getLiveStates());
+        assertEquals(3, stats.getLiveEdges());
+        fsa.setMergeListener(null);
+        fsa.ingestSentence("d");
+        fsa.learn();
+        assertEquals(1, levels.size());
+    }
+
+    private static List<MergeLevelStats> stepped(String... sentences) {
+        FSA fsa = new FSA();
+        for (String sentence : sentences) {
+            fsa.ingestSentence(sentence);
+        }
+        List<MergeLevelStats> levels = new ArrayList<>();
+        fsa.setMergeListener(levels::add);
+        while (fsa.merge()) {
+            assertTrue(levels.size() < 100, "merging does not end");
+        }
+        return levels;
+    }
+
+    private static void assertLevel(MergeLevelStats stats, int level, int levelSize, int groupsMerged,
+            long edgesRewired, long selfLoopsCreated, long duplicatesDropped, int liveStates, int liveEdges) {
+        assertEquals(level, stats.getLevel(), "level");
+        assertEquals(levelSize, stats.getLevelSize(), "level size of " + level);
+        assertEquals(groupsMerged, stats.getGroupsMerged(), "groups merged in " + level);
+        assertEquals(edgesRewired, stats.getEdgesRewired(), "edges rewired in " + level);
+        assertEquals(selfLoopsCreated, stats.getSelfLoopsCreated(), "self-loops created in " + level);
+        assertEquals(duplicatesDropped, stats.getDuplicatesDropped(), "duplicates dropped in " + level);
+        assertEquals(liveStates, stats.getLiveStates(), "live states after " + level);
+        assertEquals(liveEdges, stats.getLiveEdges(), "live edges after " + level);
+    }
+}
@@ -0,0 +1,70 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class MinimizeTest {
+
+    @Test
+    void keepsTheLanguage() {
+        for (long seed = 0; seed < 50; seed++) {
+            List<String> corpus = Languages.corpus(seed, 20, 4, 6);
+            FSA fsa = learned(corpus);
+            CompiledDFA before = fsa.compile();
+            MinimizationSummary summary = fsa.minimize();
+            assertEquals(fsa.getStateCount(), summary.getStatesAfter());
+            assertTrue(Languages.equivalent(before, fsa.compile()), "language for seed " + seed);
+            assertTrue(Languages.equivalent(Languages.zeroReversible(corpus, fsa.getSymbolTable()), fsa.compile()));
+        }
+    }
+
+    @Test
+    void isIdempotent() {
+        for (long seed = 0; seed < 20; seed++) {
+            FSA fsa = learned(Languages.corpus(seed, 60, 5, 7));
+            int states = fsa.minimize().getStatesAfter();
+            CompiledDFA minimal = fsa.compile();
+            assertEquals(states, fsa.minimize().getStatesAfter());
+            assertTrue(Languages.equivalent(minimal, fsa.compile()));
+        }
+    }
+
+    @Test
+    void minimalPrefixTreeMatchesSortedIngestion() {
+        List<String> corpus = Languages.corpus(11, 80, 3, 6);
+        FSA tree = new FSA();
+        for (String sentence : corpus) {
+            tree.ingestSentence(sentence);
+        }
+        tree.minimize();
+        FSA dawg = new FSA();
+        dawg.ingestSorted(Languages.sorted(corpus));
+        assertEquals(dawg.getStateCount(), tree.getStateCount());
+        assertEquals(dawg.getTransitionCount(), tree.getTransitionCount());
+    }
+
+    @Test
+    void rejectsNondeterministicAutomata() {
+        FSA fsa = new FSA();
+        for (String sentence : List.of("a", "a b c", "d", "d b")) {
+            fsa.ingestSentence(sentence);
+        }
+        // merging the final states leaves two b transitions out of them
+        fsa.merge();
+        assertThrows(IllegalStateException.class, fsa::minimize);
+    }
+
+    private static FSA learned(List<String> corpus) {
+        FSA fsa = new FSA();
+        for (String sentence : corpus) {
+            fsa.ingestSentence(sentence);
+        }
+        fsa.learn();
+        return fsa;
+    }
+}
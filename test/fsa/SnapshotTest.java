@@ -0,0 +1,124 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsTheAutomaton() throws IOException {
+        List<String> corpus = Languages.corpus(4, 50, 5, 6);
+        FSA fsa = new FSA();
+        for (String sentence : corpus) {
+            fsa.ingestSentence(sentence);
+        }
+        fsa.learn();
+        Path file = dir.resolve("fsa.snapshot");
+        fsa.writeSnapshot(file);
+        CompiledDFA loaded = CompiledDFA.loadSnapshot(file);
+        CompiledDFA compiled = fsa.compile();
+        assertEquals(compiled.getStateCount(), loaded.getStateCount());
+        assertEquals(compiled.getTransitionCount(), loaded.getTransitionCount());
+        assertTrue(Languages.equivalent(compiled, loaded));
+        for (String probe : Languages.corpus(5, 200, 6, 7)) {
+            assertEquals(compiled.accepts(probe), loaded.accepts(probe), probe);
+        }
+    }
+
+    @Test
+    void rejectsTruncatedFiles() throws IOException {
+        FSA fsa = new FSA();
+        fsa.ingestSentence("a b c");
+        Path file = dir.resolve("fsa.snapshot");
+        fsa.writeSnapshot(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> CompiledDFA.loadSnapshot(file));
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThrows(IOException.class, () -> CompiledDFA.loadSnapshot(file));
+    }
+
+    @Test
+    void rejectsOutOfRangeStatesAndTransitions() throws IOException {
+        FSA fsa = new FSA();
+        fsa.ingestSentence("a b c");
+        fsa.ingestSentence("a c");
+        Path file = dir.resolve("fsa.snapshot");
+        fsa.writeSnapshot(file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        int states = header.getInt(8);
+        int transitions = header.getInt(12);
+        int labelCount = header.getInt(16);
+        int offsets = 40 + (states + 63) / 64 * Long.BYTES;
+        int labels = offsets + (states + 1) * Integer.BYTES;
+        int targets = labels + transitions * Integer.BYTES;
+
+        assertCorrupt(file, bytes, 20, states);
+        assertCorrupt(file, bytes, 20, -1);
+        assertCorrupt(file, bytes, offsets, 1);
+        assertCorrupt(file, bytes, offsets + Integer.BYTES, transitions + 1);
+        assertCorrupt(file, bytes, offsets + states * Integer.BYTES, transitions - 1);
+        assertCorrupt(file, bytes, labels, labelCount);
+        assertCorrupt(file, bytes, labels, -1);
+        assertCorrupt(file, bytes, targets, states);
+        assertCorrupt(file, bytes, targets, -1);
+    }
+
+    @Test
+    void checksumsCatchDamage() throws IOException {
+        FSA fsa = new FSA();
+        fsa.ingestSentence("a b c");
+        Path file = dir.resolve("fsa.snapshot");
+        fsa.writeSnapshot(file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        byte[] header = bytes.clone();
+        header[12]++;
+        Files.write(file, header);
+        assertMessage("header checksum", assertThrows(IOException.class, () -> CompiledDFA.loadSnapshot(file)));
+
+        // a damaged body only shows when the load is verified
+        byte[] body = bytes.clone();
+        body[body.length - 1]++;
+        Files.write(file, body);
+        CompiledDFA.loadSnapshot(file);
+        assertMessage("body checksum",
+                assertThrows(IOException.class, () -> CompiledDFA.loadSnapshot(file, true)));
+    }
+
+    // writes the file with one int changed and checksums to match, so that
+    // only the range checks of a verified load can catch it
+    private static void assertCorrupt(Path file, byte[] bytes, int position, int value) throws IOException {
+        ByteBuffer corrupt = ByteBuffer.wrap(bytes.clone());
+        corrupt.putInt(position, value);
+        CRC32 checksum = new CRC32();
+        checksum.update(corrupt.array(), 40, bytes.length - 40);
+        corrupt.putInt(28, (int) checksum.getValue());
+        checksum.reset();
+        checksum.update(corrupt.array(), 0, 32);
+        corrupt.putInt(32, (int) checksum.getValue());
+        Files.write(file, corrupt.array());
+        assertMessage("", assertThrows(IOException.class, () -> CompiledDFA.loadSnapshot(file, true)));
+    }
+
+    private static void assertMessage(String detail, IOException e) {
+        assertTrue(e.getMessage().startsWith("corrupt snapshot") && e.getMessage().contains(detail),
+                e.getMessage());
+    }
+}
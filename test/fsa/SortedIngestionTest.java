@@ -0,0 +1,74 @@
+package fsa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SortedIngestionTest {
+
+    @Test
+    void acceptsExactlyTheCorpus() {
+        List<String> corpus = Languages.sorted(Languages.corpus(5, 100, 4, 6));
+        FSA dawg = new FSA();
+        dawg.ingestSorted(corpus);
+        for (String sentence : corpus) {
+            assertTrue(dawg.accepts(sentence), sentence);
+        }
+        for (String probe : Languages.corpus(6, 200, 4, 6)) {
+            assertEquals(corpus.contains(probe), dawg.accepts(probe), probe);
+        }
+    }
+
+    @Test
+    void learnsWhatThePrefixTreeLearns() {
+        for (long seed = 0; seed < 50; seed++) {
+            List<String> corpus = Languages.corpus(seed, 30, 3, 5);
+            FSA tree = new FSA();
+            for (String sentence : corpus) {
+                tree.ingestSentence(sentence);
+            }
+            tree.learn();
+            FSA dawg = new FSA();
+            dawg.ingestSorted(Languages.sorted(corpus));
+            dawg.learn();
+            assertEquals(tree.getStateCount(), dawg.getStateCount(), "states for seed " + seed);
+            assertTrue(Languages.equivalent(tree.compile(), dawg.compile()), "language for seed " + seed);
+        }
+    }
+
+    @Test
+    void ordersTokensByTheirUtf8Bytes() {
+        // U+FFFD is EF BF BD in UTF-8 and U+1F600 F0 9F 98 80, but as
+        // UTF-16 the surrogate D83D of U+1F600 comes first
+        List<String> bytewise = List.of("a \uFFFD", "a \uD83D\uDE00", "a \uD83D\uDE00 b");
+        FSA dawg = new FSA();
+        dawg.ingestSorted(bytewise);
+        for (String sentence : bytewise) {
+            assertTrue(dawg.accepts(sentence), sentence);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new FSA().ingestSorted(List.of("a \uD83D\uDE00", "a \uFFFD")));
+
+        String[] tokens = {"", "a", "ab", "b", "\u00E9", "\uFFFD", "\uD800\uDC00", "\uD83D\uDE00"};
+        for (String x : tokens) {
+            for (String y : tokens) {
+                assertEquals(Integer.signum(Arrays.compareUnsigned(x.getBytes(StandardCharsets.UTF_8),
+                        y.getBytes(StandardCharsets.UTF_8))), Integer.signum(DawgBuilder.compareCodePoints(x, y)),
+                        x + " / " + y);
+            }
+        }
+    }
+
+    @Test
+    void needsAnEmptyAutomaton() {
+        FSA fsa = new FSA();
+        fsa.ingestSentence("a b");
+        assertThrows(IllegalStateException.class, () -> fsa.ingestSorted(List.of("c")));
+    }
+}
@@ -0,0 +1,44 @@
+package learn;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CrossValidationTest {
+
+    private static final List<String> CORPUS = List.of("Mary eats pies", "John bakes cakes", "Mary bakes cakes",
+            "John eats pies", "Mary eats cakes", "John bakes pies");
+
+    @Test
+    void holdsOutEverySentenceOnce() {
+        CrossValidation validation = new CrossValidation(CORPUS, List.of("pies eats Mary"), 3);
+        CrossValidationReport report = validation.run();
+        assertEquals(3, report.getFolds().size());
+        int heldOut = 0;
+        for (FoldResult fold : report.getFolds()) {
+            assertEquals(CORPUS.size(), fold.getTrainingSentences() + fold.getTruePositives()
+                    + fold.getFalseNegatives());
+            assertEquals(1, fold.getTrueNegatives() + fold.getFalsePositives());
+            heldOut += fold.getTruePositives() + fold.getFalseNegatives();
+        }
+        assertEquals(CORPUS.size(), heldOut);
+    }
+
+    @Test
+    void doesNotDependOnTheThreads() {
+        CrossValidation sequential = new CrossValidation(CORPUS, List.of("Mary Mary"), 2);
+        sequential.setThreads(1);
+        CrossValidation parallel = new CrossValidation(CORPUS, List.of("Mary Mary"), 2);
+        parallel.setThreads(2);
+        assertEquals(sequential.run().getRecall(), parallel.run().getRecall());
+    }
+
+    @Test
+    void needsTwoFolds() {
+        assertThrows(IllegalArgumentException.class, () -> new CrossValidation(CORPUS, List.of(), 1));
+        assertThrows(IllegalArgumentException.class, () -> new CrossValidation(CORPUS.subList(0, 2), List.of(), 3));
+    }
+}
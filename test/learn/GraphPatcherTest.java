@@ -0,0 +1,125 @@
+package learn;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.jung.graph.DirectedSparseMultigraph;
+import fsa.FSA;
+import fsa.FSAEdge;
+import fsa.FSANode;
+
+class GraphPatcherTest {
+
+    @Test
+    void followsMergesRollbackAndIngestion() {
+        FSA fsa = new FSA();
+        for (String sentence : corpus(1, 40)) {
+            fsa.ingestSentence(sentence);
+        }
+        // merge a little first, so the patcher loads edges with several
+        // labels, the empty token among them
+        fsa.merge();
+        fsa.merge();
+        GraphPatcher patcher = new GraphPatcher(fsa);
+        assertSameGraph(fsa, patcher, "loaded");
+
+        List<Integer> checkpoints = new ArrayList<>();
+        int step = 0;
+        do {
+            checkpoints.add(fsa.checkpoint());
+            assertSameGraph(fsa, patcher, "step " + step++);
+        } while (fsa.merge() && step < 50);
+
+        fsa.rollback(checkpoints.get(checkpoints.size() / 2));
+        assertSameGraph(fsa, patcher, "rolled back");
+
+        for (String sentence : corpus(2, 10)) {
+            fsa.ingestSentence(sentence);
+        }
+        assertSameGraph(fsa, patcher, "ingested");
+        step = 0;
+        while (fsa.merge() && step < 50) {
+            assertSameGraph(fsa, patcher, "step " + step++ + " after ingesting");
+        }
+        assertSameGraph(fsa, patcher, "learned");
+    }
+
+    @Test
+    void loadsTheEmptyToken() {
+        // "c d" and " d", whose first token is empty, end up with one edge
+        // from the start state labelled "c" and ""
+        FSA fsa = new FSA();
+        fsa.ingestSentence("c d");
+        fsa.ingestSentence(" d");
+        fsa.ingestSentence("c c d");
+        int c = fsa.getSymbolTable().lookup("c");
+        boolean shared = false;
+        while (!shared && fsa.merge()) {
+            int start = fsa.getStartState();
+            shared = fsa.getTransitionLabels(start, fsa.getNextState(start, c)).length == 2;
+        }
+        assertTrue(shared);
+        GraphPatcher patcher = new GraphPatcher(fsa);
+        assertSameGraph(fsa, patcher, "loaded");
+        fsa.learn();
+        assertSameGraph(fsa, patcher, "learned");
+    }
+
+    // sentences over a, b, c and the empty token, which a double space or a
+    // leading space produces
+    private static List<String> corpus(long seed, int count) {
+        String[] tokens = {"a", "b", "c", ""};
+        Random random = new Random(seed);
+        List<String> sentences = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder sentence = new StringBuilder();
+            int length = 1 + random.nextInt(4);
+            for (int j = 0; j < length; j++) {
+                if (j > 0) {
+                    sentence.append(' ');
+                }
+                sentence.append(tokens[j == length - 1 ? random.nextInt(3) : random.nextInt(4)]);
+            }
+            sentences.add(sentence.toString());
+        }
+        return sentences;
+    }
+
+    private static void assertSameGraph(FSA fsa, GraphPatcher patcher, String when) {
+        patcher.flush();
+        DirectedSparseMultigraph<FSANode, FSAEdge> expected = fsa.getVisualGraph();
+        assertEquals(nodes(expected), nodes(patcher.getGraph()), "states when " + when);
+        assertEquals(edges(expected), edges(patcher.getGraph()), "transitions when " + when);
+    }
+
+    private static Set<String> nodes(DirectedSparseMultigraph<FSANode, FSAEdge> graph) {
+        Set<String> nodes = new TreeSet<>();
+        for (FSANode node : graph.getVertices()) {
+            nodes.add(node.getState() + " " + node.getID() + (node.isAccepting() ? " accepting" : ""));
+        }
+        return nodes;
+    }
+
+    // the labels of each edge, in no particular order
+    private static Map<String, List<String>> edges(DirectedSparseMultigraph<FSANode, FSAEdge> graph) {
+        Map<String, List<String>> edges = new TreeMap<>();
+        for (FSAEdge edge : graph.getEdges()) {
+            String[] labels = edge.getLabel().split(", ", -1);
+            Arrays.sort(labels);
+            edges.put(graph.getSource(edge).getState() + " -> " + graph.getDest(edge).getState(),
+                    Arrays.asList(labels));
+        }
+        return edges;
+    }
+}